@@ -2,8 +2,9 @@ package ru.practicum.ewm;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import ru.practicum.stats.client.StatsClient;
 
-@SpringBootApplication
+@SpringBootApplication(scanBasePackageClasses = {MainServerApp.class, StatsClient.class})
 public class MainServerApp {
     public static void main(String[] args) {
         SpringApplication.run(MainServerApp.class, args);
@@ -5,8 +5,6 @@ import com.querydsl.core.types.dsl.Expressions;
 import io.micrometer.core.instrument.util.StringUtils;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.context.ApplicationContext;
-import org.springframework.context.annotation.AnnotationConfigApplicationContext;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -40,7 +38,6 @@ import ru.practicum.ewm.user.repository.UserRepository;
 import ru.practicum.ewm.utils.Patterns;
 import ru.practicum.stats.client.StatsClient;
 import ru.practicum.stats.dto.HitDto;
-import ru.practicum.stats.dto.ViewStatsDto;
 
 import javax.servlet.http.HttpServletRequest;
 import java.time.LocalDateTime;
@@ -71,8 +68,7 @@ public class EventServiceImpl implements EventService {
     private final CategoryMapper categoryMapper;
     private final UserMapper userMapper;
     private final CommentService commentService;
-    ApplicationContext context = new AnnotationConfigApplicationContext("ru.practicum.stats.client");
-    private final StatsClient statsClient = context.getBean(StatsClient.class);
+    private final StatsClient statsClient;
     private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern(Patterns.DATE_PATTERN);
 
     @Override
@@ -395,29 +391,20 @@ public class EventServiceImpl implements EventService {
         return result;
     }
 
-    private List<ViewStatsDto> getStats(String start,
-                                        String end,
-                                        List<String> uris) {
-        return statsClient.getStats(start, end, uris, false);
-    }
-
     private long getView(Event event) {
-        var start = event.getCreatedOn().format(formatter);
-        var end = now().format(formatter);
-        var uris = List.of("/events/" + event.getId());
-        var stats = getStats(start, end, uris);
-
-        if (stats.size() == 1)
-            return stats.get(0).getHits();
-        else
-            return 0L;
+        return getViews(List.of(event)).getOrDefault(event.getId(), 0L);
     }
 
     private Map<Long, Long> getViews(List<Event> events) {
-        Map<Long, Long> result = new HashMap<>();
+        Map<String, LocalDateTime> starts = new HashMap<>();
+        for (Event event : events) {
+            starts.put("/events/" + event.getId(), event.getCreatedOn());
+        }
+        var hits = statsClient.getViews(starts, false);
 
+        Map<Long, Long> result = new HashMap<>();
         for (Event event : events) {
-            result.put(event.getId(), getView(event));
+            result.put(event.getId(), hits.getOrDefault("/events/" + event.getId(), 0L));
         }
         return result;
     }
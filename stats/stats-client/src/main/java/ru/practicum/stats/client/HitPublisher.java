@@ -0,0 +1,249 @@
+package ru.practicum.stats.client;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import ru.practicum.stats.dto.HitDto;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Fire-and-forget delivery of hits: publish only queues the hit and a background thread
+ * sends the queue in batches of up to batch-size, at most flush-interval-ms after the first
+ * hit of a batch arrived. A full queue drops new hits instead of blocking the caller,
+ * and close() sends whatever is still queued. A batch stats-server rejects for another reason
+ * than being unavailable is resent hit by hit, and only the hits rejected on their own are dropped.
+ * <p>
+ * With a spool, batches that cannot be delivered because stats-server is unavailable are
+ * appended to it, and so is every new batch until the spool has been replayed, which keeps
+ * hits in order as long as the spool has room. Without one the pending batch is held and
+ * retried meanwhile.
+ */
+@Slf4j
+class HitPublisher {
+
+    private final Consumer<List<HitDto>> sender;
+    private final HitSpool spool;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final long shutdownTimeoutMs;
+    private final BlockingQueue<HitDto> queue;
+    private final Timer flushTimer;
+    private final Counter droppedCounter;
+    private final Counter failedCounter;
+    private final Counter spoolDroppedCounter;
+    private final Thread publisher;
+    private volatile boolean running = true;
+    private long replayAfter;
+
+    /**
+     * spool may be null.
+     */
+    HitPublisher(Consumer<List<HitDto>> sender,
+                 HitSpool spool,
+                 MeterRegistry meterRegistry,
+                 int capacity,
+                 int batchSize,
+                 long flushIntervalMs,
+                 long shutdownTimeoutMs) {
+        this.sender = sender;
+        this.spool = spool;
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.replayAfter = System.nanoTime();
+
+        meterRegistry.gauge("stats.client.publisher.queue", queue, BlockingQueue::size);
+        flushTimer = meterRegistry.timer("stats.client.publisher.flush");
+        droppedCounter = meterRegistry.counter("stats.client.publisher.dropped");
+        failedCounter = meterRegistry.counter("stats.client.publisher.failed");
+        spoolDroppedCounter = meterRegistry.counter("stats.client.spool.dropped");
+
+        publisher = new Thread(this::drain, "stats-hit-publisher");
+        publisher.setDaemon(true);
+        publisher.start();
+    }
+
+    void publish(HitDto hitDto) {
+        if (!running || !queue.offer(hitDto))
+            droppedCounter.increment();
+    }
+
+    void close() throws InterruptedException {
+        running = false;
+        publisher.join(shutdownTimeoutMs);
+        if (publisher.isAlive()) {
+            log.warn("Stats publisher did not drain in {} ms, {} hits left", shutdownTimeoutMs, queue.size());
+            publisher.interrupt();
+            publisher.join(shutdownTimeoutMs);
+        }
+        if (spool == null)
+            return;
+        if (publisher.isAlive())
+            log.warn("Stats publisher is still running, leaving the hit spool open");
+        else
+            spool.close();
+    }
+
+    private void drain() {
+        while (running || !queue.isEmpty()) {
+            try {
+                var replaying = canReplay();
+                var first = queue.poll(replaying ? 0 : flushIntervalMs, MILLISECONDS);
+                if (first != null) {
+                    List<HitDto> batch = new ArrayList<>(batchSize);
+                    batch.add(first);
+                    if (replaying)
+                        queue.drainTo(batch, batchSize - 1);
+                    else
+                        collect(batch);
+                    flush(batch);
+                }
+                if (replaying)
+                    replay();
+            } catch (InterruptedException exception) {
+                return;
+            }
+        }
+    }
+
+    private void collect(List<HitDto> batch) throws InterruptedException {
+        var deadline = System.nanoTime() + MILLISECONDS.toNanos(flushIntervalMs);
+
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            var remaining = deadline - System.nanoTime();
+            if (batch.size() >= batchSize || remaining <= 0 || !running)
+                return;
+
+            var next = queue.poll(remaining, NANOSECONDS);
+            if (next == null)
+                return;
+            batch.add(next);
+        }
+    }
+
+    private void flush(List<HitDto> batch) throws InterruptedException {
+        if (spool == null) {
+            flushHolding(batch);
+            return;
+        }
+        if (!spool.isEmpty()) {
+            var spooled = spool.append(batch);
+            if (spooled < batch.size())
+                sendOverflow(batch.subList(spooled, batch.size()));
+            return;
+        }
+        var sent = deliver(batch);
+        if (sent < batch.size()) {
+            var unsent = batch.subList(sent, batch.size());
+            var spooled = spool.append(unsent);
+            spoolDroppedCounter.increment(unsent.size() - spooled);
+            backOff();
+        }
+    }
+
+    /**
+     * Hits that do not fit into a full spool are sent directly, ahead of the spooled ones,
+     * and only dropped if stats-server is still unavailable.
+     */
+    private void sendOverflow(List<HitDto> hits) {
+        spoolDroppedCounter.increment(hits.size() - deliver(hits));
+    }
+
+    /**
+     * Sends the batch, holding on to its unsent hits while stats-server is unavailable so that
+     * new hits wait in the queue meanwhile; after close() they get a single attempt.
+     */
+    private void flushHolding(List<HitDto> batch) throws InterruptedException {
+        while (true) {
+            batch = batch.subList(deliver(batch), batch.size());
+            if (batch.isEmpty())
+                return;
+            if (!running) {
+                fail(batch, "stats-server is unavailable");
+                return;
+            }
+            Thread.sleep(flushIntervalMs);
+        }
+    }
+
+    /**
+     * Sends the oldest batch of the spool. Hits the server rejects for another reason than
+     * being unavailable are acknowledged anyway, so they cannot block the spool. If it becomes
+     * unavailable halfway through the batch nothing is acknowledged, and the hits already sent
+     * are sent again under the same hit id.
+     */
+    private void replay() {
+        try {
+            var spooled = spool.read(batchSize);
+            if (deliver(spooled.getHits()) < spooled.getHits().size()) {
+                backOff();
+                return;
+            }
+            spool.ack(spooled.getEnd());
+        } catch (UncheckedIOException exception) {
+            log.warn("Failed to replay the hit spool: {}", exception.getMessage());
+            backOff();
+        }
+    }
+
+    private boolean canReplay() {
+        return spool != null && !spool.isEmpty() && System.nanoTime() - replayAfter >= 0;
+    }
+
+    private void backOff() {
+        replayAfter = System.nanoTime() + MILLISECONDS.toNanos(flushIntervalMs);
+    }
+
+    /**
+     * Sends the batch, and if stats-server rejects it for another reason than being unavailable
+     * sends its hits one by one, so a single bad hit only loses itself. Returns how many hits,
+     * from the start of the batch, were sent or rejected before stats-server was unavailable.
+     */
+    private int deliver(List<HitDto> batch) {
+        try {
+            send(batch);
+            return batch.size();
+        } catch (StatsUnavailableException exception) {
+            return 0;
+        } catch (RuntimeException exception) {
+            if (batch.size() == 1) {
+                fail(batch, exception.getMessage());
+                return 1;
+            }
+            log.warn("Failed to send {} hits to stats-server, sending them one by one: {}", batch.size(),
+                    exception.getMessage());
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            var hit = batch.subList(i, i + 1);
+            try {
+                send(hit);
+            } catch (StatsUnavailableException exception) {
+                return i;
+            } catch (RuntimeException exception) {
+                fail(hit, exception.getMessage());
+            }
+        }
+        return batch.size();
+    }
+
+    private void send(List<HitDto> batch) {
+        flushTimer.record(() -> sender.accept(batch));
+    }
+
+    private void fail(List<HitDto> batch, String reason) {
+        failedCounter.increment(batch.size());
+        log.warn("Failed to send {} hits to stats-server: {}", batch.size(), reason);
+    }
+}
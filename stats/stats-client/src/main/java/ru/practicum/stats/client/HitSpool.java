@@ -0,0 +1,290 @@
+package ru.practicum.stats.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import ru.practicum.stats.dto.HitDto;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Append-only file of hits that could not be delivered, replayed in order by the publisher.
+ * A record is its length, CRC32 and the hit as JSON. The generation of the current file and
+ * the offset of its first unacknowledged record live in a separate file, so replay resumes
+ * there after a restart, and a record torn by a crash is cut off when the spool is opened.
+ * Hits sent but not yet acknowledged before a crash are sent again under the same hit id.
+ * <p>
+ * max-bytes bounds the unacknowledged bytes. The spool is emptied once all of it is
+ * acknowledged, and once the acknowledged prefix reaches half of max-bytes the rest is
+ * moved to a file of the next generation, so the disk holds at most about 1.5 times max-bytes.
+ */
+@Slf4j
+class HitSpool {
+
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+
+    private final Path directory;
+    private final FileChannel offset;
+    private final ObjectMapper objectMapper;
+    private final long maxBytes;
+    private final Counter spooledCounter;
+    private FileChannel data;
+    private long generation;
+    private volatile long acked;
+    private volatile long end;
+
+    HitSpool(Path directory, long maxBytes, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.directory = directory;
+        this.objectMapper = objectMapper;
+        this.maxBytes = maxBytes;
+        try {
+            Files.createDirectories(directory);
+            offset = FileChannel.open(directory.resolve("hits.offset"), CREATE, READ, WRITE);
+            readAcked();
+            data = FileChannel.open(dataFile(generation), CREATE, READ, WRITE);
+            deleteOtherGenerations();
+            end = recover();
+        } catch (IOException exception) {
+            throw new UncheckedIOException("Cannot open the hit spool in " + directory, exception);
+        }
+        if (end > acked)
+            log.info("Hit spool has {} bytes to replay", end - acked);
+
+        spooledCounter = meterRegistry.counter("stats.client.spool.spooled");
+        meterRegistry.gauge("stats.client.spool.bytes", this, spool -> spool.end - spool.acked);
+    }
+
+    boolean isEmpty() {
+        return acked == end;
+    }
+
+    /**
+     * Appends the first hits that keep the unacknowledged part within max-bytes, forces
+     * them to disk and returns how many were appended.
+     */
+    int append(List<HitDto> hits) {
+        List<ByteBuffer> records = new ArrayList<>(hits.size());
+        var size = 0L;
+        for (HitDto hit : hits) {
+            var record = encode(hit);
+            if (end - acked + size + record.remaining() > maxBytes)
+                break;
+            records.add(record);
+            size += record.remaining();
+        }
+        if (records.isEmpty())
+            return 0;
+
+        try {
+            var buffers = records.toArray(new ByteBuffer[0]);
+            data.position(end);
+            for (long written = 0; written < size; ) {
+                written += data.write(buffers);
+            }
+            data.force(false);
+            end += size;
+            spooledCounter.increment(records.size());
+            return records.size();
+        } catch (IOException exception) {
+            log.warn("Failed to spool {} hits: {}", records.size(), exception.getMessage());
+            truncateQuietly(end);
+            return 0;
+        }
+    }
+
+    /**
+     * Up to max hits from the first unacknowledged one, with the offset to acknowledge once
+     * they are delivered.
+     */
+    Batch read(int max) {
+        List<HitDto> hits = new ArrayList<>(max);
+        var position = acked;
+        try {
+            var header = ByteBuffer.allocate(HEADER_BYTES);
+            while (hits.size() < max && position < end) {
+                header.clear();
+                readFully(header, position);
+                var payload = ByteBuffer.allocate(header.getInt(0));
+                readFully(payload, position + HEADER_BYTES);
+                hits.add(objectMapper.readValue(payload.array(), HitDto.class));
+                position += HEADER_BYTES + payload.capacity();
+            }
+        } catch (IOException exception) {
+            throw new UncheckedIOException("Cannot read the hit spool", exception);
+        }
+        return new Batch(hits, position);
+    }
+
+    void ack(long position) {
+        try {
+            if (position >= end) {
+                data.truncate(0);
+                position = 0;
+                end = 0;
+            } else if (position >= maxBytes / 2) {
+                rotate(position);
+                return;
+            }
+            writeAcked(generation, position);
+            acked = position;
+        } catch (IOException exception) {
+            throw new UncheckedIOException("Cannot acknowledge the hit spool", exception);
+        }
+    }
+
+    void close() {
+        try {
+            data.close();
+            offset.close();
+        } catch (IOException exception) {
+            log.warn("Failed to close the hit spool: {}", exception.getMessage());
+        }
+    }
+
+    /**
+     * Moves the records from position on to a file of the next generation. The switch is
+     * the write of the offset file; a crash before it leaves the old file in charge.
+     */
+    private void rotate(long position) throws IOException {
+        var next = FileChannel.open(dataFile(generation + 1), CREATE, TRUNCATE_EXISTING, READ, WRITE);
+        var pending = end - position;
+        try {
+            for (long copied = 0; copied < pending; ) {
+                copied += data.transferTo(position + copied, pending - copied, next);
+            }
+            next.force(false);
+            writeAcked(generation + 1, 0);
+        } catch (IOException exception) {
+            next.close();
+            throw exception;
+        }
+        data.close();
+        Files.deleteIfExists(dataFile(generation));
+        data = next;
+        generation++;
+        end = pending;
+        acked = 0;
+    }
+
+    private Path dataFile(long generation) {
+        return directory.resolve("hits-" + generation + ".spool");
+    }
+
+    private void deleteOtherGenerations() throws IOException {
+        var current = dataFile(generation).getFileName().toString();
+        try (var files = Files.newDirectoryStream(directory, "hits-*.spool")) {
+            for (Path file : files) {
+                if (!file.getFileName().toString().equals(current))
+                    Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * End of the last intact record after the acknowledged offset; anything after it is cut off.
+     */
+    private long recover() throws IOException {
+        var size = data.size();
+        if (acked > size)
+            acked = 0;
+
+        var position = acked;
+        var header = ByteBuffer.allocate(HEADER_BYTES);
+        while (position + HEADER_BYTES <= size) {
+            header.clear();
+            readFully(header, position);
+            var length = header.getInt(0);
+            if (length <= 0 || position + HEADER_BYTES + length > size)
+                break;
+
+            var payload = ByteBuffer.allocate(length);
+            readFully(payload, position + HEADER_BYTES);
+            if (crc(payload.array()) != header.getInt(Integer.BYTES))
+                break;
+            position += HEADER_BYTES + length;
+        }
+        if (position < size) {
+            log.warn("Cutting off {} bytes of a torn hit spool record", size - position);
+            data.truncate(position);
+        }
+        return position;
+    }
+
+    private ByteBuffer encode(HitDto hit) {
+        try {
+            var payload = objectMapper.writeValueAsBytes(hit);
+            return ByteBuffer.allocate(HEADER_BYTES + payload.length)
+                    .putInt(payload.length)
+                    .putInt(crc(payload))
+                    .put(payload)
+                    .flip();
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    private void readAcked() throws IOException {
+        if (offset.size() < 2 * Long.BYTES)
+            return;
+        var buffer = ByteBuffer.allocate(2 * Long.BYTES);
+        readFully(offset, buffer, 0);
+        generation = buffer.getLong(0);
+        acked = buffer.getLong(Long.BYTES);
+    }
+
+    private void writeAcked(long generation, long position) throws IOException {
+        var buffer = ByteBuffer.allocate(2 * Long.BYTES).putLong(generation).putLong(position).flip();
+        while (buffer.hasRemaining()) {
+            offset.write(buffer, buffer.position());
+        }
+        offset.force(false);
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        readFully(data, buffer, position);
+    }
+
+    private void truncateQuietly(long size) {
+        try {
+            data.truncate(size);
+        } catch (IOException exception) {
+            log.warn("Failed to truncate the hit spool: {}", exception.getMessage());
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new EOFException();
+        }
+    }
+
+    private static int crc(byte[] bytes) {
+        var crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    @Value
+    static class Batch {
+
+        List<HitDto> hits;
+        long end;
+    }
+}
@@ -0,0 +1,88 @@
+package ru.practicum.stats.client;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Consecutive-failure circuit breaker for stats-server calls. After failure-threshold
+ * failures in a row calls are rejected for open-ms, then a single probe call is let
+ * through and its outcome closes the circuit or opens it again.
+ */
+@Component
+public class StatsCircuitBreaker {
+
+    public enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    private final boolean enabled;
+    private final int failureThreshold;
+    private final long openNanos;
+    private final Counter rejectedCounter;
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+
+    public StatsCircuitBreaker(@Value("${stats-server.breaker.enabled:true}") boolean enabled,
+                               @Value("${stats-server.breaker.failure-threshold:5}") int failureThreshold,
+                               @Value("${stats-server.breaker.open-ms:10000}") long openMs,
+                               ObjectProvider<MeterRegistry> meterRegistry) {
+        this.enabled = enabled;
+        this.failureThreshold = failureThreshold;
+        this.openNanos = MILLISECONDS.toNanos(openMs);
+
+        var registry = meterRegistry.getIfAvailable(SimpleMeterRegistry::new);
+        rejectedCounter = registry.counter("stats.client.breaker.rejected");
+        registry.gauge("stats.client.breaker.state", this, breaker -> breaker.getState().ordinal());
+    }
+
+    /**
+     * Whether a call may go to stats-server now; a permitted call must report its outcome.
+     */
+    public synchronized boolean tryAcquire() {
+        if (!enabled || state == State.CLOSED)
+            return true;
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+            state = State.HALF_OPEN;
+            return true;
+        }
+        rejectedCounter.increment();
+        return false;
+    }
+
+    public synchronized void onSuccess() {
+        failures = 0;
+        state = State.CLOSED;
+    }
+
+    /**
+     * Ends a permitted call whose outcome says nothing about the health of stats-server;
+     * if it was the probe, the next call probes again.
+     */
+    public synchronized void release() {
+        if (state == State.HALF_OPEN)
+            state = State.OPEN;
+    }
+
+    public synchronized void onFailure() {
+        failures++;
+        if (state == State.HALF_OPEN || failures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized int getFailures() {
+        return failures;
+    }
+}
@@ -1,60 +1,300 @@
 package ru.practicum.stats.client;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.channel.ChannelOption;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.PropertySource;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Exceptions;
 import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.util.retry.Retry;
+import ru.practicum.stats.dto.AcceptedHitsDto;
 import ru.practicum.stats.dto.HitDto;
+import ru.practicum.stats.dto.StatsQueryDto;
+import ru.practicum.stats.dto.StatsWindowDto;
 import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.dto.WindowStatsDto;
 
-import java.util.List;
+import javax.annotation.PreDestroy;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.TimeoutException;
 
+import static java.util.stream.Collectors.toList;
+import static org.springframework.http.HttpHeaders.ACCEPT;
 import static org.springframework.http.HttpHeaders.CONTENT_TYPE;
 import static org.springframework.http.HttpStatus.CREATED;
+import static org.springframework.http.HttpStatus.TOO_MANY_REQUESTS;
 import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
 import static org.springframework.http.ResponseEntity.status;
 
+@Slf4j
 @Component
 @PropertySource("classpath:application.properties")
 public class StatsClient {
 
+    public static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+
     private final WebClient webClient;
+    private final int maxRetries;
+    private final Duration retryBackoff;
+    private final Duration deadline;
+    private final StatsCircuitBreaker statsCircuitBreaker;
+    private final Counter viewsFallbackCounter;
+    private final Counter hitsFallbackCounter;
+    private final HitPublisher hitPublisher;
+    private final ViewCountCache viewCountCache;
+
+    /**
+     * With stats-server.wire-format=smile hits and stats are exchanged in the binary Smile
+     * encoding instead of JSON, which is cheaper to parse on both sides. With
+     * stats-server.publisher.enabled addStats only queues the hit for a background publisher,
+     * which with stats-server.spool.enabled keeps undeliverable hits in a file until they are sent,
+     * and with stats-server.views-cache.enabled getViews answers from a local cache.
+     * Every call is bounded by stats-server.timeout.deadline-ms, retries included.
+     */
+    public StatsClient(@Value("${stats-server.url}") String serverUrl,
+                       @Value("${stats-server.wire-format:json}") String wireFormat,
+                       @Value("${stats-server.retry.max-retries:3}") int maxRetries,
+                       @Value("${stats-server.retry.backoff-ms:100}") long retryBackoffMs,
+                       @Value("${stats-server.timeout.connect-ms:500}") int connectTimeoutMs,
+                       @Value("${stats-server.timeout.response-ms:1000}") long responseTimeoutMs,
+                       @Value("${stats-server.timeout.deadline-ms:2000}") long deadlineMs,
+                       @Value("${stats-server.publisher.enabled:false}") boolean publisherEnabled,
+                       @Value("${stats-server.publisher.capacity:10000}") int publisherCapacity,
+                       @Value("${stats-server.publisher.batch-size:500}") int publisherBatchSize,
+                       @Value("${stats-server.publisher.flush-interval-ms:200}") long publisherFlushIntervalMs,
+                       @Value("${stats-server.publisher.shutdown-timeout-ms:5000}") long publisherShutdownTimeoutMs,
+                       @Value("${stats-server.spool.enabled:false}") boolean spoolEnabled,
+                       @Value("${stats-server.spool.dir:${java.io.tmpdir}/stats-spool}") String spoolDir,
+                       @Value("${stats-server.spool.max-bytes:67108864}") long spoolMaxBytes,
+                       @Value("${stats-server.views-cache.enabled:false}") boolean viewsCacheEnabled,
+                       @Value("${stats-server.views-cache.capacity:100000}") int viewsCacheCapacity,
+                       @Value("${stats-server.views-cache.ttl-ms:5000}") long viewsCacheTtlMs,
+                       @Value("${stats-server.views-cache.max-stale-ms:60000}") long viewsCacheMaxStaleMs,
+                       StatsCircuitBreaker statsCircuitBreaker,
+                       ObjectProvider<MeterRegistry> meterRegistry) {
+        this.maxRetries = maxRetries;
+        this.retryBackoff = Duration.ofMillis(retryBackoffMs);
+        this.deadline = Duration.ofMillis(deadlineMs);
+        this.statsCircuitBreaker = statsCircuitBreaker;
+        var registry = meterRegistry.getIfAvailable(SimpleMeterRegistry::new);
+        viewsFallbackCounter = registry.counter("stats.client.fallback", "call", "views");
+        hitsFallbackCounter = registry.counter("stats.client.fallback", "call", "hits");
 
-    public StatsClient(@Value("${stats-server.url}") String serverUrl) {
+        var mediaType = "smile".equalsIgnoreCase(wireFormat) ? APPLICATION_SMILE_VALUE : APPLICATION_JSON_VALUE;
+        var httpClient = HttpClient.create()
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+                .responseTimeout(Duration.ofMillis(responseTimeoutMs));
         webClient = WebClient.builder()
                 .baseUrl(serverUrl)
-                .defaultHeader(CONTENT_TYPE, APPLICATION_JSON_VALUE)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .defaultHeader(CONTENT_TYPE, mediaType)
+                .defaultHeader(ACCEPT, mediaType)
                 .build();
+        var spool = publisherEnabled && spoolEnabled
+                ? new HitSpool(Path.of(spoolDir), spoolMaxBytes, Jackson2ObjectMapperBuilder.json().build(), registry)
+                : null;
+        hitPublisher = publisherEnabled
+                ? new HitPublisher(this::addStats, spool, registry,
+                publisherCapacity, publisherBatchSize, publisherFlushIntervalMs, publisherShutdownTimeoutMs)
+                : null;
+        viewCountCache = viewsCacheEnabled
+                ? new ViewCountCache(this::loadViews, registry,
+                viewsCacheCapacity, viewsCacheTtlMs, viewsCacheMaxStaleMs)
+                : null;
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        if (viewCountCache != null)
+            viewCountCache.close();
+        if (hitPublisher != null)
+            hitPublisher.close();
     }
 
     public List<ViewStatsDto> getStats(String start,
                                        String end,
                                        List<String> uris,
                                        Boolean unique) {
-        var paramsUri = uris.stream().reduce("", (result, uri) -> result + "&uris=" + uri);
-
-        return webClient.get()
+        return execute(webClient.get()
                 .uri(uriBuilder -> uriBuilder
                         .path("/stats")
                         .queryParam("start", start)
                         .queryParam("end", end)
-                        .queryParam(paramsUri)
+                        .queryParam("uris", uris)
                         .queryParam("unique", unique)
                         .build())
                 .retrieve()
                 .bodyToFlux(ViewStatsDto.class)
-                .collectList()
-                .block();
+                .collectList());
+    }
+
+    public List<WindowStatsDto> queryStats(StatsQueryDto query) {
+        return execute(webClient.post()
+                .uri("/stats/query")
+                .body(Mono.just(query), StatsQueryDto.class)
+                .retrieve()
+                .bodyToFlux(WindowStatsDto.class)
+                .collectList());
+    }
+
+    /**
+     * Hits of every uri over [start, end], summed over apps, fetched in one request.
+     * Uris without hits map to 0.
+     */
+    public Map<String, Long> getHits(Collection<String> uris,
+                                     LocalDateTime start,
+                                     LocalDateTime end,
+                                     boolean unique) {
+        Map<String, Long> hits = new HashMap<>();
+        if (uris.isEmpty())
+            return hits;
+
+        var window = StatsWindowDto.builder()
+                .start(start)
+                .end(end)
+                .build();
+        var windows = queryStats(StatsQueryDto.builder()
+                .uris(new ArrayList<>(uris))
+                .unique(unique)
+                .windows(List.of(window))
+                .build());
+
+        uris.forEach(uri -> hits.put(uri, 0L));
+        windows.get(0).getStats().forEach(stats -> hits.merge(stats.getUri(), stats.getHits(), Long::sum));
+        return hits;
+    }
+
+    /**
+     * Hits of every uri from its start until now, where the start is when the uri began to
+     * receive hits, e.g. the creation time of the resource, so a request counting several
+     * uris from their earliest start is still exact. With the views cache the counts may
+     * lag behind by up to ttl-ms, or max-stale-ms more while they are being refreshed.
+     * While stats-server is unavailable the last cached counts, or 0, are returned.
+     */
+    public Map<String, Long> getViews(Map<String, LocalDateTime> startByUri, boolean unique) {
+        try {
+            return viewCountCache != null ? viewCountCache.get(startByUri, unique) : loadViews(startByUri, unique);
+        } catch (StatsUnavailableException exception) {
+            log.debug("Serving fallback views: {}", exception.getMessage());
+            viewsFallbackCounter.increment();
+            Map<String, Long> views = viewCountCache != null
+                    ? viewCountCache.peek(startByUri.keySet(), unique)
+                    : new HashMap<>();
+            startByUri.keySet().forEach(uri -> views.putIfAbsent(uri, 0L));
+            return views;
+        }
     }
 
+    /**
+     * Sends the hit under a client-generated id and retries transport errors, 429 and 5xx
+     * with the same id, so the server counts a retried hit once. In publisher mode the hit
+     * is only queued and is dropped if the queue is full; otherwise a hit that cannot be
+     * delivered is dropped once stats-server is unavailable instead of failing the caller.
+     */
     public void addStats(HitDto hitDto) {
-        webClient.post()
-                .uri("/hit")
-                .body(Mono.just(hitDto), HitDto.class)
-                .exchangeToMono(response -> response.statusCode().equals(CREATED)
-                        ? response.bodyToMono(Object.class).map(body -> status(CREATED).body(body))
-                        : response.createException().flatMap(Mono::error))
-                .block();
+        var hit = withHitId(hitDto);
+        if (hitPublisher != null) {
+            hitPublisher.publish(hit);
+            return;
+        }
+
+        try {
+            execute(webClient.post()
+                    .uri("/hit")
+                    .body(Mono.just(hit), HitDto.class)
+                    .exchangeToMono(response -> response.statusCode().equals(CREATED)
+                            ? response.bodyToMono(Object.class).map(body -> status(CREATED).body(body))
+                            : response.createException().flatMap(Mono::error))
+                    .retryWhen(Retry.backoff(maxRetries, retryBackoff).filter(StatsClient::isRetryable)));
+        } catch (StatsUnavailableException exception) {
+            log.debug("Dropping hit: {}", exception.getMessage());
+            hitsFallbackCounter.increment();
+        }
+    }
+
+    /**
+     * Sends the hits in one request, retried like addStats(HitDto); throws
+     * StatsUnavailableException if stats-server is unavailable.
+     */
+    public AcceptedHitsDto addStats(List<HitDto> hitDtos) {
+        var hits = hitDtos.stream().map(StatsClient::withHitId).collect(toList());
+
+        return execute(webClient.post()
+                .uri("/hits")
+                .bodyValue(hits)
+                .retrieve()
+                .bodyToMono(AcceptedHitsDto.class)
+                .retryWhen(Retry.backoff(maxRetries, retryBackoff).filter(StatsClient::isRetryable)));
+    }
+
+    /**
+     * Runs the request within the deadline through the circuit breaker. Transport errors,
+     * timeouts, 429 and 5xx count as failures and surface as StatsUnavailableException.
+     * Other 4xx responses prove stats-server is up and count as successes; they and any other
+     * error are rethrown as is, the latter without telling the breaker anything.
+     */
+    private <T> T execute(Mono<T> request) {
+        if (!statsCircuitBreaker.tryAcquire())
+            throw new StatsUnavailableException("stats-server circuit breaker is open", null);
+
+        try {
+            var result = request.timeout(deadline).block();
+            statsCircuitBreaker.onSuccess();
+            return result;
+        } catch (RuntimeException exception) {
+            var cause = Exceptions.unwrap(exception);
+            if (Exceptions.isRetryExhausted(cause))
+                cause = cause.getCause();
+            if (!(cause instanceof TimeoutException) && !isRetryable(cause)) {
+                if (cause instanceof WebClientResponseException
+                        && ((WebClientResponseException) cause).getStatusCode().is4xxClientError())
+                    statsCircuitBreaker.onSuccess();
+                else
+                    statsCircuitBreaker.release();
+                throw exception;
+            }
+            statsCircuitBreaker.onFailure();
+            throw new StatsUnavailableException("stats-server is unavailable: " + cause, cause);
+        }
+    }
+
+    private Map<String, Long> loadViews(Map<String, LocalDateTime> startByUri, boolean unique) {
+        if (startByUri.isEmpty())
+            return new HashMap<>();
+        return getHits(startByUri.keySet(), Collections.min(startByUri.values()), LocalDateTime.now(), unique);
+    }
+
+    private static HitDto withHitId(HitDto hitDto) {
+        return hitDto.getHitId() != null ? hitDto : HitDto.builder()
+                .hitId(UUID.randomUUID().toString())
+                .app(hitDto.getApp())
+                .uri(hitDto.getUri())
+                .ip(hitDto.getIp())
+                .timestamp(hitDto.getTimestamp())
+                .build();
+    }
+
+    private static boolean isRetryable(Throwable throwable) {
+        if (throwable instanceof WebClientRequestException)
+            return true;
+        if (throwable instanceof WebClientResponseException) {
+            var status = ((WebClientResponseException) throwable).getStatusCode();
+            return status.is5xxServerError() || status == TOO_MANY_REQUESTS;
+        }
+        return false;
     }
 }
\ No newline at end of file
@@ -0,0 +1,29 @@
+package ru.practicum.stats.client;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports the stats-server circuit breaker. An open circuit is DEGRADED rather than DOWN:
+ * stats are served from fallbacks meanwhile, so the application itself stays healthy.
+ */
+@Component
+@RequiredArgsConstructor
+public class StatsServerHealthIndicator implements HealthIndicator {
+
+    private static final Status DEGRADED = new Status("DEGRADED");
+
+    private final StatsCircuitBreaker statsCircuitBreaker;
+
+    @Override
+    public Health health() {
+        var state = statsCircuitBreaker.getState();
+        return (state == StatsCircuitBreaker.State.CLOSED ? Health.up() : Health.status(DEGRADED))
+                .withDetail("circuit", state)
+                .withDetail("consecutiveFailures", statsCircuitBreaker.getFailures())
+                .build();
+    }
+}
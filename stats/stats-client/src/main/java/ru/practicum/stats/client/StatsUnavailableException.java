@@ -0,0 +1,11 @@
+package ru.practicum.stats.client;
+
+/**
+ * stats-server failed, timed out or is cut off by the circuit breaker.
+ */
+public class StatsUnavailableException extends RuntimeException {
+
+    public StatsUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,170 @@
+package ru.practicum.stats.client;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiFunction;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Bounded LRU cache of per-uri view counts. An entry younger than ttl-ms is served as is;
+ * an older one is still served for up to max-stale-ms more while a background thread
+ * reloads it, and past that it is loaded synchronously like a missing one. Missing and
+ * expired uris of a call are loaded together in one request.
+ */
+@Slf4j
+class ViewCountCache {
+
+    private final BiFunction<Map<String, LocalDateTime>, Boolean, Map<String, Long>> loader;
+    private final long ttlNanos;
+    private final long maxStaleNanos;
+    private final Map<Key, Entry> entries;
+    private final ExecutorService refresher;
+    private final Counter hitCounter;
+    private final Counter staleCounter;
+    private final Counter missCounter;
+
+    ViewCountCache(BiFunction<Map<String, LocalDateTime>, Boolean, Map<String, Long>> loader,
+                   MeterRegistry meterRegistry,
+                   int capacity,
+                   long ttlMs,
+                   long maxStaleMs) {
+        this.loader = loader;
+        this.ttlNanos = MILLISECONDS.toNanos(ttlMs);
+        this.maxStaleNanos = MILLISECONDS.toNanos(maxStaleMs);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+        this.refresher = Executors.newSingleThreadExecutor(runnable -> {
+            var thread = new Thread(runnable, "stats-views-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        hitCounter = meterRegistry.counter("stats.client.views.cache", "result", "hit");
+        staleCounter = meterRegistry.counter("stats.client.views.cache", "result", "stale");
+        missCounter = meterRegistry.counter("stats.client.views.cache", "result", "miss");
+        meterRegistry.gauge("stats.client.views.cache.size", entries, this::size);
+        meterRegistry.gauge("stats.client.views.cache.hit-ratio", this, ViewCountCache::hitRatio);
+    }
+
+    Map<String, Long> get(Map<String, LocalDateTime> startByUri, boolean unique) {
+        Map<String, Long> result = new HashMap<>();
+        Map<String, LocalDateTime> missing = new HashMap<>();
+        Map<String, LocalDateTime> stale = new HashMap<>();
+        var now = System.nanoTime();
+
+        synchronized (entries) {
+            startByUri.forEach((uri, start) -> {
+                var entry = entries.get(new Key(uri, unique));
+                var age = entry == null ? Long.MAX_VALUE : now - entry.loadedAt;
+                if (age > ttlNanos + maxStaleNanos) {
+                    missing.put(uri, start);
+                    return;
+                }
+                result.put(uri, entry.hits);
+                if (age > ttlNanos && !entry.refreshing) {
+                    entry.refreshing = true;
+                    stale.put(uri, start);
+                }
+            });
+        }
+        hitCounter.increment(result.size() - stale.size());
+        staleCounter.increment(stale.size());
+        missCounter.increment(missing.size());
+
+        if (!stale.isEmpty())
+            refresher.execute(() -> refresh(stale, unique));
+        if (!missing.isEmpty())
+            result.putAll(load(missing, unique));
+        return result;
+    }
+
+    /**
+     * Cached counts of the uris regardless of their age, without loading anything.
+     */
+    Map<String, Long> peek(Collection<String> uris, boolean unique) {
+        Map<String, Long> result = new HashMap<>();
+        synchronized (entries) {
+            uris.forEach(uri -> {
+                var entry = entries.get(new Key(uri, unique));
+                if (entry != null)
+                    result.put(uri, entry.hits);
+            });
+        }
+        return result;
+    }
+
+    void close() {
+        refresher.shutdownNow();
+    }
+
+    private Map<String, Long> load(Map<String, LocalDateTime> startByUri, boolean unique) {
+        var hits = loader.apply(startByUri, unique);
+        var loadedAt = System.nanoTime();
+
+        synchronized (entries) {
+            hits.forEach((uri, count) -> entries.put(new Key(uri, unique), new Entry(count, loadedAt)));
+        }
+        return hits;
+    }
+
+    private void refresh(Map<String, LocalDateTime> startByUri, boolean unique) {
+        try {
+            load(startByUri, unique);
+        } catch (RuntimeException exception) {
+            log.debug("Failed to refresh views of {} uris: {}", startByUri.size(), exception.getMessage());
+            synchronized (entries) {
+                startByUri.keySet().forEach(uri -> {
+                    var entry = entries.get(new Key(uri, unique));
+                    if (entry != null)
+                        entry.refreshing = false;
+                });
+            }
+        }
+    }
+
+    private int size(Map<Key, Entry> entries) {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private double hitRatio() {
+        var served = hitCounter.count() + staleCounter.count();
+        var total = served + missCounter.count();
+        return total == 0 ? 0 : served / total;
+    }
+
+    @Value
+    private static class Key {
+
+        String uri;
+        boolean unique;
+    }
+
+    private static class Entry {
+
+        private final long hits;
+        private final long loadedAt;
+        private boolean refreshing;
+
+        Entry(long hits, long loadedAt) {
+            this.hits = hits;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
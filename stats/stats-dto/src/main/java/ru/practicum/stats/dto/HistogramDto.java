@@ -0,0 +1,19 @@
+package ru.practicum.stats.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Getter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class HistogramDto {
+
+    private String app;
+    private String uri;
+    private List<HistogramPointDto> points;
+}
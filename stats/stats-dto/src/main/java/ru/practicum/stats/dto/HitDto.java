@@ -8,6 +8,7 @@ import lombok.NoArgsConstructor;
 
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
 import java.time.LocalDateTime;
 
 import static com.fasterxml.jackson.annotation.JsonFormat.Shape.STRING;
@@ -20,13 +21,21 @@ public class HitDto {
 
     private Long id;
 
+    /**
+     * Optional client-generated id; a hit re-sent with the same id is counted once.
+     */
+    @Size(max = 64)
+    private String hitId;
+
     @NotBlank
     private String ip;
 
     @NotBlank
+    @Size(max = 140)
     private String app;
 
     @NotBlank
+    @Size(max = 140)
     private String uri;
 
     @NotNull
@@ -0,0 +1,25 @@
+package ru.practicum.stats.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotEmpty;
+import java.util.List;
+
+@Getter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StatsQueryDto {
+
+    private List<String> uris;
+
+    @Builder.Default
+    private Boolean unique = false;
+
+    @NotEmpty
+    private List<@Valid StatsWindowDto> windows;
+}
@@ -0,0 +1,27 @@
+package ru.practicum.stats.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.NotNull;
+import java.time.LocalDateTime;
+
+import static com.fasterxml.jackson.annotation.JsonFormat.Shape.STRING;
+
+@Getter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StatsWindowDto {
+
+    @NotNull
+    @JsonFormat(shape = STRING, pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime start;
+
+    @NotNull
+    @JsonFormat(shape = STRING, pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime end;
+}
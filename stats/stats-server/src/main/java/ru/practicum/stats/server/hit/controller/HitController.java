@@ -1,36 +1,115 @@
 package ru.practicum.stats.server.hit.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import lombok.AllArgsConstructor;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
+import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import ru.practicum.stats.dto.AcceptedHitsDto;
+import ru.practicum.stats.dto.HistogramDto;
 import ru.practicum.stats.dto.HitDto;
+import ru.practicum.stats.dto.StatsQueryDto;
 import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.dto.WindowStatsDto;
+import ru.practicum.stats.server.hit.enums.RollupGranularity;
+import ru.practicum.stats.server.hit.service.HitAdmissionControl;
 import ru.practicum.stats.server.hit.service.HitService;
 import ru.practicum.stats.server.hit.utils.Patterns;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static org.springframework.http.HttpStatus.CREATED;
 
+@Validated
 @RestController
 @AllArgsConstructor
 public class HitController {
 
     private final HitService hitService;
+    private final HitAdmissionControl hitAdmissionControl;
+    private final ObjectMapper objectMapper;
 
     @PostMapping("/hit")
     @ResponseStatus(CREATED)
-    public void saveHit(@RequestBody @Valid HitDto hitDto) {
-        hitService.saveHit(hitDto);
+    public CompletableFuture<Void> saveHit(@RequestBody @Valid HitDto hitDto) {
+        return hitAdmissionControl.admit(() -> hitService.saveHit(hitDto));
+    }
+
+    @PostMapping("/hits")
+    @ResponseStatus(CREATED)
+    public CompletableFuture<AcceptedHitsDto> saveHits(@RequestBody List<@Valid HitDto> hitDtos) {
+        return hitAdmissionControl.admit(() -> hitService.saveHits(hitDtos));
     }
 
     @GetMapping("/stats")
     public List<ViewStatsDto> getStats(@DateTimeFormat(pattern = Patterns.DATE_PATTERN) LocalDateTime start,
                                        @DateTimeFormat(pattern = Patterns.DATE_PATTERN) LocalDateTime end,
                                        @RequestParam(defaultValue = "false") boolean unique,
+                                       @RequestParam(defaultValue = "false") boolean exact,
                                        @RequestParam(required = false) List<String> uris) {
-        return hitService.getHits(start, end, uris, unique);
+        return hitService.getHits(start, end, uris, unique, exact);
+    }
+
+    @GetMapping("/stats/top")
+    public List<ViewStatsDto> getTopStats(@DateTimeFormat(pattern = Patterns.DATE_PATTERN) LocalDateTime start,
+                                          @DateTimeFormat(pattern = Patterns.DATE_PATTERN) LocalDateTime end,
+                                          @RequestParam(defaultValue = "10") int limit) {
+        return hitService.getTopHits(start, end, limit);
+    }
+
+    @GetMapping("/stats/histogram")
+    public List<HistogramDto> getHistogram(@DateTimeFormat(pattern = Patterns.DATE_PATTERN) LocalDateTime start,
+                                           @DateTimeFormat(pattern = Patterns.DATE_PATTERN) LocalDateTime end,
+                                           @RequestParam(defaultValue = "HOUR") RollupGranularity granularity,
+                                           @RequestParam(defaultValue = "false") boolean unique,
+                                           @RequestParam(required = false) List<String> uris) {
+        return hitService.getHistogram(start, end, uris, unique, granularity);
+    }
+
+    @PostMapping("/stats/query")
+    public List<WindowStatsDto> queryStats(@RequestBody @Valid StatsQueryDto query) {
+        return hitService.queryHits(query);
+    }
+
+    @GetMapping(value = "/stats", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public void streamStats(@DateTimeFormat(pattern = Patterns.DATE_PATTERN) LocalDateTime start,
+                            @DateTimeFormat(pattern = Patterns.DATE_PATTERN) LocalDateTime end,
+                            @RequestParam(defaultValue = "false") boolean unique,
+                            @RequestParam(required = false) List<String> uris,
+                            HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        var writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+        var generator = objectMapper.getFactory().createGenerator(response.getOutputStream())
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .setRootValueSeparator(null);
+
+        hitService.streamHits(start, end, uris, unique, viewStats -> {
+            try {
+                writer.writeValue(generator, viewStats);
+                generator.writeRaw('\n');
+            } catch (IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+        });
+        generator.close();
+    }
+
+    @GetMapping(value = "/stats", params = "stream=true")
+    public void streamStatsByParam(@DateTimeFormat(pattern = Patterns.DATE_PATTERN) LocalDateTime start,
+                                   @DateTimeFormat(pattern = Patterns.DATE_PATTERN) LocalDateTime end,
+                                   @RequestParam(defaultValue = "false") boolean unique,
+                                   @RequestParam(required = false) List<String> uris,
+                                   HttpServletResponse response) throws IOException {
+        streamStats(start, end, unique, uris, response);
     }
 }
@@ -0,0 +1,7 @@
+package ru.practicum.stats.server.hit.enums;
+
+public enum OverflowPolicy {
+    BLOCK,
+    DROP,
+    REJECT
+}
@@ -0,0 +1,6 @@
+package ru.practicum.stats.server.hit.enums;
+
+public enum RetentionAction {
+    DETACH,
+    DROP
+}
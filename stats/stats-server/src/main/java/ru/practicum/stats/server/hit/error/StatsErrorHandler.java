@@ -1,22 +1,37 @@
 package ru.practicum.stats.server.hit.error;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
 import ru.practicum.stats.server.hit.exception.BadParamException;
+import ru.practicum.stats.server.hit.exception.HitBufferOverflowException;
+import ru.practicum.stats.server.hit.exception.HitInFlightException;
+import ru.practicum.stats.server.hit.exception.IngestOverloadedException;
 import ru.practicum.stats.server.hit.model.Error;
 import ru.practicum.stats.server.hit.utils.Patterns;
 
+import javax.servlet.http.HttpServletResponse;
+import javax.validation.ConstraintViolationException;
+
 import static java.time.LocalDateTime.now;
 import static java.time.format.DateTimeFormatter.ofPattern;
 import static org.springframework.http.HttpStatus.BAD_REQUEST;
 import static org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+import static org.springframework.http.HttpStatus.TOO_MANY_REQUESTS;
 
 @Slf4j
 @RestControllerAdvice
 public class StatsErrorHandler {
 
+    @Value("${stats-server.admission.retry-after-seconds:1}")
+    private long retryAfterSeconds;
+
     @ExceptionHandler
     @ResponseStatus(BAD_REQUEST)
     public Error handleEventWrongTimeException(final BadParamException exception) {
@@ -29,6 +44,84 @@ public class StatsErrorHandler {
                 .build();
     }
 
+    @ExceptionHandler
+    @ResponseStatus(BAD_REQUEST)
+    public Error handleMethodArgumentNotValidException(final MethodArgumentNotValidException exception) {
+        log.debug("Получен статус 400 BAD_REQUEST {}", exception.getMessage(), exception);
+        return Error.builder()
+                .status(BAD_REQUEST.getReasonPhrase().toUpperCase())
+                .reason("Incorrectly made request")
+                .message(exception.getMessage())
+                .timestamp(now().format(ofPattern(Patterns.DATE_PATTERN)))
+                .build();
+    }
+
+    @ExceptionHandler
+    @ResponseStatus(BAD_REQUEST)
+    public Error handleConstraintViolationException(final ConstraintViolationException exception) {
+        log.debug("Получен статус 400 BAD_REQUEST {}", exception.getMessage(), exception);
+        return Error.builder()
+                .status(BAD_REQUEST.getReasonPhrase().toUpperCase())
+                .reason("Incorrectly made request")
+                .message(exception.getMessage())
+                .timestamp(now().format(ofPattern(Patterns.DATE_PATTERN)))
+                .build();
+    }
+
+    @ExceptionHandler
+    @ResponseStatus(BAD_REQUEST)
+    public Error handleMethodArgumentTypeMismatchException(final MethodArgumentTypeMismatchException exception) {
+        log.debug("Получен статус 400 BAD_REQUEST {}", exception.getMessage(), exception);
+        return Error.builder()
+                .status(BAD_REQUEST.getReasonPhrase().toUpperCase())
+                .reason("Incorrectly made request")
+                .message(exception.getMessage())
+                .timestamp(now().format(ofPattern(Patterns.DATE_PATTERN)))
+                .build();
+    }
+
+    @ExceptionHandler
+    @ResponseStatus(TOO_MANY_REQUESTS)
+    public Error handleHitBufferOverflowException(final HitBufferOverflowException exception,
+                                                  final HttpServletResponse response) {
+        log.debug("Получен статус 429 TOO_MANY_REQUESTS {}", exception.getMessage(), exception);
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        return Error.builder()
+                .status(TOO_MANY_REQUESTS.getReasonPhrase().toUpperCase())
+                .reason("Hit buffer overflow")
+                .message(exception.getMessage())
+                .timestamp(now().format(ofPattern(Patterns.DATE_PATTERN)))
+                .build();
+    }
+
+    @ExceptionHandler
+    @ResponseStatus(TOO_MANY_REQUESTS)
+    public Error handleHitInFlightException(final HitInFlightException exception,
+                                            final HttpServletResponse response) {
+        log.debug("Получен статус 429 TOO_MANY_REQUESTS {}", exception.getMessage(), exception);
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        return Error.builder()
+                .status(TOO_MANY_REQUESTS.getReasonPhrase().toUpperCase())
+                .reason("Hit in flight")
+                .message(exception.getMessage())
+                .timestamp(now().format(ofPattern(Patterns.DATE_PATTERN)))
+                .build();
+    }
+
+    @ExceptionHandler
+    @ResponseStatus(SERVICE_UNAVAILABLE)
+    public Error handleIngestOverloadedException(final IngestOverloadedException exception,
+                                                 final HttpServletResponse response) {
+        log.debug("Получен статус 503 SERVICE_UNAVAILABLE {}", exception.getMessage(), exception);
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(exception.getRetryAfterSeconds()));
+        return Error.builder()
+                .status(SERVICE_UNAVAILABLE.getReasonPhrase().toUpperCase())
+                .reason("Ingest overloaded")
+                .message(exception.getMessage())
+                .timestamp(now().format(ofPattern(Patterns.DATE_PATTERN)))
+                .build();
+    }
+
     @ExceptionHandler
     @ResponseStatus(INTERNAL_SERVER_ERROR)
     public Error handleEmptyResultDataAccessException(final Throwable exception) {
@@ -0,0 +1,8 @@
+package ru.practicum.stats.server.hit.exception;
+
+public class HitBufferOverflowException extends RuntimeException {
+
+    public HitBufferOverflowException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,8 @@
+package ru.practicum.stats.server.hit.exception;
+
+public class HitInFlightException extends RuntimeException {
+
+    public HitInFlightException(String message) {
+        super(message);
+    }
+}
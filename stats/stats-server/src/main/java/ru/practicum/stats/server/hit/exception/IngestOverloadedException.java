@@ -0,0 +1,14 @@
+package ru.practicum.stats.server.hit.exception;
+
+import lombok.Getter;
+
+@Getter
+public class IngestOverloadedException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public IngestOverloadedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
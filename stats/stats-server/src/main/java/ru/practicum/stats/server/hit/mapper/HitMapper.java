@@ -6,9 +6,16 @@ import ru.practicum.stats.dto.HitDto;
 import ru.practicum.stats.server.hit.model.Hit;
 import ru.practicum.stats.server.hit.utils.Patterns;
 
+import java.util.List;
+
 @Mapper(componentModel = "spring")
 public interface HitMapper {
 
     @Mapping(target = "timestamp", source = "timestamp", dateFormat = Patterns.DATE_PATTERN)
+    @Mapping(target = "appId", ignore = true)
+    @Mapping(target = "uriId", ignore = true)
+    @Mapping(target = "ipId", ignore = true)
     Hit toEntity(HitDto hitDto);
+
+    List<Hit> toEntities(List<HitDto> hitDtos);
 }
\ No newline at end of file
@@ -0,0 +1,16 @@
+package ru.practicum.stats.server.hit.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Getter
+@RequiredArgsConstructor
+public class HistogramStats {
+
+    private final String uri;
+    private final String app;
+    private final LocalDateTime bucket;
+    private final Long hits;
+}
@@ -1,47 +1,28 @@
 package ru.practicum.stats.server.hit.model;
 
 import lombok.*;
-import org.hibernate.Hibernate;
 import org.springframework.format.annotation.DateTimeFormat;
 import ru.practicum.stats.server.hit.utils.Patterns;
 
-import javax.persistence.*;
 import java.time.LocalDateTime;
-import java.util.Objects;
 
-import static javax.persistence.GenerationType.IDENTITY;
-
-@Entity
 @Getter
 @Setter
 @Builder
 @ToString
 @NoArgsConstructor
 @AllArgsConstructor
-@Table(name = "hits", schema = "public")
 public class Hit {
-    @Id
-    @GeneratedValue(strategy = IDENTITY)
-    private Long id;
 
+    private Long id;
     private String uri;
     private String app;
     private String ip;
 
     @DateTimeFormat(pattern = Patterns.DATE_PATTERN)
-    @Column(name = "timestamp")
     private LocalDateTime timestamp;
 
-    @Override
-    public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || Hibernate.getClass(this) != Hibernate.getClass(o)) return false;
-        Hit that = (Hit) o;
-        return getId() != null && Objects.equals(getId(), that.getId());
-    }
-
-    @Override
-    public int hashCode() {
-        return getClass().hashCode();
-    }
+    private Integer appId;
+    private Integer uriId;
+    private Integer ipId;
 }
@@ -0,0 +1,16 @@
+package ru.practicum.stats.server.hit.model;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+@Getter
+@ToString
+@EqualsAndHashCode
+@RequiredArgsConstructor
+public class HitKey {
+
+    private final String app;
+    private final String uri;
+}
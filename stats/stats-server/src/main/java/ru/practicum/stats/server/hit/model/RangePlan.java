@@ -0,0 +1,27 @@
+package ru.practicum.stats.server.hit.model;
+
+import lombok.Getter;
+import ru.practicum.stats.server.hit.enums.RollupGranularity;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A time range split into whole rollup buckets and the raw edges they do not cover.
+ */
+@Getter
+public class RangePlan {
+
+    private final List<TimeRange> raw = new ArrayList<>();
+    private final Map<RollupGranularity, List<TimeRange>> buckets = new EnumMap<>(RollupGranularity.class);
+
+    public void addRaw(TimeRange range) {
+        raw.add(range);
+    }
+
+    public void addBuckets(RollupGranularity granularity, TimeRange range) {
+        buckets.computeIfAbsent(granularity, key -> new ArrayList<>()).add(range);
+    }
+}
@@ -0,0 +1,19 @@
+package ru.practicum.stats.server.hit.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+/**
+ * Half-open interval [start, end).
+ */
+@Getter
+@ToString
+@RequiredArgsConstructor
+public class TimeRange {
+
+    private final LocalDateTime start;
+    private final LocalDateTime end;
+}
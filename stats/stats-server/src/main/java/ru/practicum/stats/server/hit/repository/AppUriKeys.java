@@ -0,0 +1,58 @@
+package ru.practicum.stats.server.hit.repository;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * Packs an (app id, uri id) pair into one long for per-pair maps merged in Java,
+ * and resolves such keys back to their app and uri names.
+ */
+class AppUriKeys {
+
+    private AppUriKeys() {
+    }
+
+    static long key(int appId, int uriId) {
+        return ((long) appId << 32) | (uriId & 0xffffffffL);
+    }
+
+    static int appId(long key) {
+        return (int) (key >>> 32);
+    }
+
+    static int uriId(long key) {
+        return (int) key;
+    }
+
+    /**
+     * App and uri name of each key, in that order.
+     */
+    static Map<Long, List<String>> names(NamedParameterJdbcTemplate jdbcTemplate, Set<Long> keys) {
+        Map<Long, List<String>> names = new HashMap<>();
+        if (keys.isEmpty())
+            return names;
+
+        var params = new MapSqlParameterSource()
+                .addValue("appIds", keys.stream().map(AppUriKeys::appId).collect(toSet()))
+                .addValue("uriIds", keys.stream().map(AppUriKeys::uriId).collect(toSet()));
+        Map<Integer, String> apps = new HashMap<>();
+        Map<Integer, String> uris = new HashMap<>();
+        jdbcTemplate.query("SELECT id, name FROM hit_apps WHERE id IN (:appIds)", params,
+                rs -> {
+                    apps.put(rs.getInt("id"), rs.getString("name"));
+                });
+        jdbcTemplate.query("SELECT id, name FROM hit_uris WHERE id IN (:uriIds)", params,
+                rs -> {
+                    uris.put(rs.getInt("id"), rs.getString("name"));
+                });
+        keys.forEach(key -> names.put(key, List.of(apps.get(appId(key)), uris.get(uriId(key)))));
+        return names;
+    }
+}
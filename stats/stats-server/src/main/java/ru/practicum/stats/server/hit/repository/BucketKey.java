@@ -0,0 +1,55 @@
+package ru.practicum.stats.server.hit.repository;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import ru.practicum.stats.server.hit.enums.RollupGranularity;
+import ru.practicum.stats.server.hit.model.Hit;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.Objects;
+
+/**
+ * Ordered key of a rollup bucket, so batched upserts lock rows in the same order.
+ */
+@Getter
+@RequiredArgsConstructor
+class BucketKey implements Comparable<BucketKey> {
+
+    private static final Comparator<BucketKey> ORDER = Comparator
+            .comparing(BucketKey::getGranularity)
+            .thenComparing(BucketKey::getBucket)
+            .thenComparing(BucketKey::getAppId)
+            .thenComparing(BucketKey::getUriId);
+
+    private final RollupGranularity granularity;
+    private final LocalDateTime bucket;
+    private final Integer appId;
+    private final Integer uriId;
+
+    static BucketKey of(RollupGranularity granularity, Hit hit) {
+        return new BucketKey(granularity, granularity.floor(hit.getTimestamp()), hit.getAppId(), hit.getUriId());
+    }
+
+    Timestamp getBucketTimestamp() {
+        return Timestamp.valueOf(bucket);
+    }
+
+    @Override
+    public int compareTo(BucketKey other) {
+        return ORDER.compare(this, other);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return compareTo((BucketKey) o) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(granularity, bucket, appId, uriId);
+    }
+}
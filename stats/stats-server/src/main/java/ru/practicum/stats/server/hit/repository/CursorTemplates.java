@@ -0,0 +1,22 @@
+package ru.practicum.stats.server.hit.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import javax.sql.DataSource;
+
+class CursorTemplates {
+
+    private CursorTemplates() {
+    }
+
+    /**
+     * A template whose statements fetch rows in chunks of fetchSize. The Postgres driver
+     * only opens a server-side cursor inside a transaction, so callers must hold one.
+     */
+    static NamedParameterJdbcTemplate of(DataSource dataSource, int fetchSize) {
+        var jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.setFetchSize(fetchSize);
+        return new NamedParameterJdbcTemplate(jdbcTemplate);
+    }
+}
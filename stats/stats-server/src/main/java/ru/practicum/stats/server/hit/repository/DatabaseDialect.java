@@ -0,0 +1,21 @@
+package ru.practicum.stats.server.hit.repository;
+
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+
+import javax.sql.DataSource;
+import java.sql.DatabaseMetaData;
+
+public enum DatabaseDialect {
+    POSTGRESQL,
+    H2;
+
+    public static DatabaseDialect of(DataSource dataSource) {
+        try {
+            String product = JdbcUtils.extractDatabaseMetaData(dataSource, DatabaseMetaData::getDatabaseProductName);
+            return "H2".equalsIgnoreCase(product) ? H2 : POSTGRESQL;
+        } catch (MetaDataAccessException exception) {
+            throw new IllegalStateException("Unable to detect database dialect", exception);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package ru.practicum.stats.server.hit.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.stats.server.hit.enums.RollupGranularity;
+import ru.practicum.stats.server.hit.model.Hit;
+import ru.practicum.stats.server.hit.model.TimeRange;
+import ru.practicum.stats.server.hit.model.ViewStats;
+import ru.practicum.stats.server.hit.sketch.RoaringBitmap;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Exact visitor sets per (app id, uri id) and hour, stored as Roaring bitmaps of IP ids.
+ * A unique count over a range is the cardinality of the union of the bitmaps of the whole
+ * hours inside it and the IP ids of the raw hits at its edges. Ingest rewrites each bitmap
+ * under a row lock, taken in key order. Hits stored while bitmaps were disabled are not covered.
+ */
+@Repository
+public class HitBitmapRepository {
+
+    private static final String INSERT_POSTGRESQL = "INSERT INTO hits_bitmap (bucket, app_id, uri_id, ips) "
+            + "VALUES (:bucket, :appId, :uriId, :ips) ON CONFLICT (bucket, app_id, uri_id) DO NOTHING";
+    private static final String INSERT_H2 = "INSERT INTO hits_bitmap (bucket, app_id, uri_id, ips) "
+            + "VALUES (:bucket, :appId, :uriId, :ips)";
+    private static final String KEY_CONDITION = " WHERE bucket = :bucket AND app_id = :appId AND uri_id = :uriId";
+    private static final int MAX_MERGE_ATTEMPTS = 5;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final HitDictionaryRepository hitDictionaryRepository;
+    private final boolean enabled;
+    private final String insert;
+
+    public HitBitmapRepository(NamedParameterJdbcTemplate jdbcTemplate,
+                               DataSource dataSource,
+                               HitDictionaryRepository hitDictionaryRepository,
+                               @Value("${stats-server.bitmaps.enabled:false}") boolean enabled,
+                               @Value("${stats-server.repository.engine:jdbc}") String engine) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.hitDictionaryRepository = hitDictionaryRepository;
+        this.enabled = enabled && "jdbc".equals(engine);
+        this.insert = this.enabled && DatabaseDialect.of(dataSource) == DatabaseDialect.H2 ? INSERT_H2 : INSERT_POSTGRESQL;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Transactional
+    public void addHits(List<Hit> hits) {
+        hitDictionaryRepository.encodeIps(hits);
+
+        Map<BucketKey, RoaringBitmap> bitmaps = new TreeMap<>();
+        for (Hit hit : hits) {
+            bitmaps.computeIfAbsent(BucketKey.of(RollupGranularity.HOUR, hit), key -> new RoaringBitmap())
+                    .add(hit.getIpId());
+        }
+        bitmaps.forEach(this::merge);
+    }
+
+    /**
+     * Exact unique visitors in [start, end).
+     */
+    @Transactional(readOnly = true)
+    public List<ViewStats> getUniqueStats(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        Map<Long, RoaringBitmap> visitors = new HashMap<>();
+        var params = new MapSqlParameterSource();
+        var uriFilter = UriConditions.of(uris, params);
+        var fullStart = RollupGranularity.HOUR.ceil(start);
+        var fullEnd = RollupGranularity.HOUR.floor(end);
+        List<TimeRange> edges = new ArrayList<>();
+
+        if (fullStart.isBefore(fullEnd)) {
+            params.addValue("fullStart", Timestamp.valueOf(fullStart))
+                    .addValue("fullEnd", Timestamp.valueOf(fullEnd));
+            var sql = "SELECT app_id, uri_id, ips FROM hits_bitmap WHERE bucket >= :fullStart AND bucket < :fullEnd"
+                    + uriFilter;
+
+            jdbcTemplate.query(sql, params, rs -> {
+                var key = AppUriKeys.key(rs.getInt("app_id"), rs.getInt("uri_id"));
+                var bitmap = RoaringBitmap.fromBytes(rs.getBytes("ips"));
+                var merged = visitors.putIfAbsent(key, bitmap);
+                if (merged != null)
+                    merged.or(bitmap);
+            });
+            if (start.isBefore(fullStart))
+                edges.add(new TimeRange(start, fullStart));
+            if (fullEnd.isBefore(end))
+                edges.add(new TimeRange(fullEnd, end));
+        } else {
+            edges.add(new TimeRange(start, end));
+        }
+        if (!edges.isEmpty()) {
+            var sql = "SELECT app_id, uri_id, i.id AS ip_id FROM hits h JOIN hit_ips i ON i.address = h.ip WHERE "
+                    + RangeConditions.of("timestamp", edges, params, "r") + uriFilter;
+
+            jdbcTemplate.query(sql, params, rs -> {
+                var key = AppUriKeys.key(rs.getInt("app_id"), rs.getInt("uri_id"));
+                visitors.computeIfAbsent(key, k -> new RoaringBitmap()).add(rs.getInt("ip_id"));
+            });
+        }
+        return AppUriKeys.names(jdbcTemplate, visitors.keySet()).entrySet().stream()
+                .map(entry -> new ViewStats(entry.getValue().get(1), entry.getValue().get(0),
+                        visitors.get(entry.getKey()).cardinality()))
+                .sorted(Comparator.comparing(ViewStats::getHits).reversed())
+                .collect(toList());
+    }
+
+    /**
+     * Unions ips into the stored bitmap of the key, creating it if needed. A losing race to
+     * create the row is retried against the row the other transaction created.
+     */
+    private void merge(BucketKey key, RoaringBitmap ips) {
+        var params = new MapSqlParameterSource()
+                .addValue("bucket", key.getBucketTimestamp())
+                .addValue("appId", key.getAppId())
+                .addValue("uriId", key.getUriId());
+
+        for (int attempt = 1; ; attempt++) {
+            var stored = jdbcTemplate.query("SELECT ips FROM hits_bitmap" + KEY_CONDITION + " FOR UPDATE", params,
+                    (rs, rowNum) -> RoaringBitmap.fromBytes(rs.getBytes("ips")));
+            if (!stored.isEmpty()) {
+                var bitmap = stored.get(0);
+                bitmap.or(ips);
+                params.addValue("ips", bitmap.toBytes());
+                jdbcTemplate.update("UPDATE hits_bitmap SET ips = :ips" + KEY_CONDITION, params);
+                return;
+            }
+            try {
+                params.addValue("ips", ips.toBytes());
+                if (jdbcTemplate.update(insert, params) > 0)
+                    return;
+            } catch (DuplicateKeyException exception) {
+                if (attempt == MAX_MERGE_ATTEMPTS)
+                    throw exception;
+            }
+        }
+    }
+}
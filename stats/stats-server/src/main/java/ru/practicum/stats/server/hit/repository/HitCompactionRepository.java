@@ -0,0 +1,65 @@
+package ru.practicum.stats.server.hit.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Per-second hit counts of raw hits removed by compaction. Hit timestamps have second
+ * precision, so these counts replace the raw rows without changing any non-unique count.
+ */
+@Repository
+public class HitCompactionRepository {
+
+    private static final String UPSERT_POSTGRESQL = "INSERT INTO hits_compacted (bucket, app_id, uri_id, hits) "
+            + "VALUES (?, ?, ?, ?) "
+            + "ON CONFLICT (bucket, app_id, uri_id) DO UPDATE SET hits = hits_compacted.hits + EXCLUDED.hits";
+    private static final String UPSERT_H2 = "MERGE INTO hits_compacted t USING (VALUES (CAST(? AS TIMESTAMP), "
+            + "CAST(? AS INT), CAST(? AS INT), CAST(? AS BIGINT))) s (bucket, app_id, uri_id, hits) "
+            + "ON t.bucket = s.bucket AND t.app_id = s.app_id AND t.uri_id = s.uri_id "
+            + "WHEN MATCHED THEN UPDATE SET t.hits = t.hits + s.hits "
+            + "WHEN NOT MATCHED THEN INSERT (bucket, app_id, uri_id, hits) "
+            + "VALUES (s.bucket, s.app_id, s.uri_id, s.hits)";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final String upsert;
+
+    public HitCompactionRepository(NamedParameterJdbcTemplate jdbcTemplate,
+                                   DataSource dataSource,
+                                   @Value("${stats-server.repository.engine:jdbc}") String engine) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.upsert = "jdbc".equals(engine) && DatabaseDialect.of(dataSource) == DatabaseDialect.H2
+                ? UPSERT_H2 : UPSERT_POSTGRESQL;
+    }
+
+    /**
+     * Moves at most limit raw hits older than before into the per-second counts
+     * and returns how many were moved.
+     */
+    @Transactional
+    public int compactBefore(LocalDateTime before, int limit) {
+        var params = new MapSqlParameterSource()
+                .addValue("before", Timestamp.valueOf(before))
+                .addValue("limit", limit);
+        List<Long> ids = jdbcTemplate.queryForList("SELECT id FROM hits WHERE timestamp < :before LIMIT :limit",
+                params, Long.class);
+        if (ids.isEmpty())
+            return 0;
+
+        var idParams = new MapSqlParameterSource("ids", ids).addValue("before", Timestamp.valueOf(before));
+        List<Object[]> counts = jdbcTemplate.query("SELECT DATE_TRUNC('second', timestamp) AS bucket, app_id, "
+                        + "uri_id, COUNT(*) AS hits FROM hits WHERE timestamp < :before AND id IN (:ids) "
+                        + "GROUP BY DATE_TRUNC('second', timestamp), app_id, uri_id", idParams,
+                (rs, rowNum) -> new Object[]{rs.getTimestamp("bucket"), rs.getInt("app_id"), rs.getInt("uri_id"),
+                        rs.getLong("hits")});
+        jdbcTemplate.getJdbcTemplate().batchUpdate(upsert, counts);
+        return jdbcTemplate.update("DELETE FROM hits WHERE timestamp < :before AND id IN (:ids)", idParams);
+    }
+}
@@ -0,0 +1,176 @@
+package ru.practicum.stats.server.hit.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.practicum.stats.server.hit.model.Hit;
+import ru.practicum.stats.server.hit.utils.IpAddresses;
+
+import javax.sql.DataSource;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.function.Function;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * Interns app and uri names, and visitor IP addresses when bitmaps need them, into integer
+ * ids. Resolved ids are cached in bounded LRU maps, and new entries are only cached once
+ * the inserting transaction commits.
+ */
+@Repository
+public class HitDictionaryRepository {
+
+    private static final String INSERT_POSTGRESQL = "INSERT INTO %s (%s) VALUES (?) ON CONFLICT (%2$s) DO NOTHING";
+    private static final String INSERT_H2 = "MERGE INTO %s t USING (VALUES (CAST(? AS %s))) s (%3$s) "
+            + "ON t.%3$s = s.%3$s WHEN NOT MATCHED THEN INSERT (%3$s) VALUES (s.%3$s)";
+
+    private static final int MAX_INSERT_ATTEMPTS = 5;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final Dictionary<String> apps;
+    private final Dictionary<String> uris;
+    private final Dictionary<ByteBuffer> ips;
+
+    public HitDictionaryRepository(NamedParameterJdbcTemplate jdbcTemplate,
+                                   DataSource dataSource,
+                                   @Value("${stats-server.dictionary.cache-size:100000}") int cacheSize,
+                                   @Value("${stats-server.repository.engine:jdbc}") String engine) {
+        this.jdbcTemplate = jdbcTemplate;
+        var h2 = "jdbc".equals(engine) && DatabaseDialect.of(dataSource) == DatabaseDialect.H2;
+        this.apps = new Dictionary<>("hit_apps", "name", h2 ? "VARCHAR(140)" : null, cacheSize,
+                name -> name, value -> (String) value);
+        this.uris = new Dictionary<>("hit_uris", "name", h2 ? "VARCHAR(140)" : null, cacheSize,
+                name -> name, value -> (String) value);
+        this.ips = new Dictionary<>("hit_ips", "address", h2 ? "VARBINARY(16)" : null, cacheSize,
+                ByteBuffer::array, value -> ByteBuffer.wrap((byte[]) value));
+    }
+
+    public void encode(List<Hit> hits) {
+        var appIds = resolve(apps, hits.stream().map(Hit::getApp).collect(toSet()));
+        var uriIds = resolve(uris, hits.stream().map(Hit::getUri).collect(toSet()));
+
+        for (Hit hit : hits) {
+            hit.setAppId(appIds.get(hit.getApp()));
+            hit.setUriId(uriIds.get(hit.getUri()));
+        }
+    }
+
+    public void encodeIps(List<Hit> hits) {
+        Map<Hit, ByteBuffer> addresses = new IdentityHashMap<>();
+        hits.forEach(hit -> addresses.put(hit, ByteBuffer.wrap(IpAddresses.toBytes(hit.getIp()))));
+        var ipIds = resolve(ips, new HashSet<>(addresses.values()));
+
+        for (Hit hit : hits) {
+            hit.setIpId(ipIds.get(addresses.get(hit)));
+        }
+    }
+
+    private <K> Map<K, Integer> resolve(Dictionary<K> dictionary, Set<K> keys) {
+        Map<K, Integer> result = new HashMap<>();
+        List<K> missing = new ArrayList<>();
+
+        synchronized (dictionary.cache) {
+            for (K key : keys) {
+                var id = dictionary.cache.get(key);
+                if (id != null)
+                    result.put(key, id);
+                else
+                    missing.add(key);
+            }
+        }
+        if (missing.isEmpty())
+            return result;
+
+        var found = find(dictionary, missing);
+        var absent = missing.stream()
+                .filter(key -> !found.containsKey(key))
+                .map(key -> new Object[]{dictionary.toValue.apply(key)})
+                .collect(toList());
+        if (!absent.isEmpty()) {
+            insert(dictionary, absent);
+            found.putAll(find(dictionary, missing));
+        }
+        result.putAll(found);
+        cacheAfterCommit(dictionary.cache, found);
+        return result;
+    }
+
+    /**
+     * H2 rejects a MERGE racing another transaction that inserts the same name instead of
+     * waiting for it like ON CONFLICT does, so the statement is retried.
+     */
+    private void insert(Dictionary<?> dictionary, List<Object[]> values) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                jdbcTemplate.getJdbcTemplate().batchUpdate(dictionary.insert, values);
+                return;
+            } catch (DuplicateKeyException exception) {
+                if (attempt == MAX_INSERT_ATTEMPTS)
+                    throw exception;
+            }
+        }
+    }
+
+    private <K> Map<K, Integer> find(Dictionary<K> dictionary, List<K> keys) {
+        Map<K, Integer> ids = new HashMap<>();
+        jdbcTemplate.query(dictionary.select,
+                new MapSqlParameterSource("values", keys.stream().map(dictionary.toValue).collect(toList())),
+                rs -> {
+                    ids.put(dictionary.toKey.apply(rs.getObject(2)), rs.getInt(1));
+                });
+        return ids;
+    }
+
+    private <K> void cacheAfterCommit(Map<K, Integer> cache, Map<K, Integer> ids) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            cache(cache, ids);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                cache(cache, ids);
+            }
+        });
+    }
+
+    private <K> void cache(Map<K, Integer> cache, Map<K, Integer> ids) {
+        synchronized (cache) {
+            cache.putAll(ids);
+        }
+    }
+
+    private static class Dictionary<K> {
+
+        private final String insert;
+        private final String select;
+        private final Map<K, Integer> cache;
+        private final Function<K, Object> toValue;
+        private final Function<Object, K> toKey;
+
+        /**
+         * h2Type is the column type the H2 MERGE casts its parameter to, or null on PostgreSQL.
+         */
+        Dictionary(String table, String column, String h2Type, int cacheSize,
+                   Function<K, Object> toValue, Function<Object, K> toKey) {
+            this.insert = h2Type != null
+                    ? String.format(INSERT_H2, table, h2Type, column)
+                    : String.format(INSERT_POSTGRESQL, table, column);
+            this.select = "SELECT id, " + column + " FROM " + table + " WHERE " + column + " IN (:values)";
+            this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, Integer> eldest) {
+                    return size() > cacheSize;
+                }
+            };
+            this.toValue = toValue;
+            this.toKey = toKey;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package ru.practicum.stats.server.hit.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Daily range partitions of the Postgres hits table, named hits_pYYYYMMDD.
+ */
+@Repository
+@RequiredArgsConstructor
+public class HitPartitionRepository {
+
+    private static final String PREFIX = "hits_p";
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.BASIC_ISO_DATE;
+    private static final String LIST_PARTITIONS = "SELECT child.relname FROM pg_inherits "
+            + "JOIN pg_class parent ON parent.oid = pg_inherits.inhparent "
+            + "JOIN pg_class child ON child.oid = pg_inherits.inhrelid "
+            + "WHERE parent.relname = 'hits' AND child.relname LIKE 'hits\\_p%'";
+    private static final String DEFAULT_PARTITION = "hits_default";
+    private static final String FOLD = "INSERT INTO hits_compacted (bucket, app_id, uri_id, hits) "
+            + "SELECT DATE_TRUNC('second', timestamp), app_id, uri_id, COUNT(*) FROM %s "
+            + "GROUP BY DATE_TRUNC('second', timestamp), app_id, uri_id "
+            + "ON CONFLICT (bucket, app_id, uri_id) DO UPDATE SET hits = hits_compacted.hits + EXCLUDED.hits";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public List<String> findPartitions() {
+        return jdbcTemplate.queryForList(LIST_PARTITIONS, String.class);
+    }
+
+    /**
+     * Creates the partition of the day unless it exists. Postgres refuses a new partition whose
+     * range the DEFAULT partition already holds rows of, so in that case DEFAULT is detached,
+     * the partition created, the rows moved over and DEFAULT attached again, all in one
+     * transaction that keeps inserts out meanwhile.
+     */
+    @Transactional
+    public void createPartition(LocalDate day) {
+        var name = name(day);
+        var exists = jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, name);
+        if (Boolean.TRUE.equals(exists))
+            return;
+
+        var range = "timestamp >= '" + day + "' AND timestamp < '" + day.plusDays(1) + "'";
+        var create = "CREATE TABLE " + name + " PARTITION OF hits "
+                + "FOR VALUES FROM ('" + day + "') TO ('" + day.plusDays(1) + "')";
+        var stray = jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM " + DEFAULT_PARTITION
+                + " WHERE " + range + ")", Boolean.class);
+        if (!Boolean.TRUE.equals(stray)) {
+            jdbcTemplate.execute(create);
+            return;
+        }
+        jdbcTemplate.execute("ALTER TABLE hits DETACH PARTITION " + DEFAULT_PARTITION);
+        jdbcTemplate.execute(create);
+        jdbcTemplate.update("INSERT INTO " + name + " SELECT * FROM " + DEFAULT_PARTITION + " WHERE " + range);
+        jdbcTemplate.update("DELETE FROM " + DEFAULT_PARTITION + " WHERE " + range);
+        jdbcTemplate.execute("ALTER TABLE hits ATTACH PARTITION " + DEFAULT_PARTITION + " DEFAULT");
+    }
+
+    /**
+     * Detaches the partition, adds its hits to the per-second counts compaction keeps and,
+     * with drop, drops it. Detaching first locks out late inserts before the hits are counted.
+     */
+    @Transactional
+    public void expirePartition(String partition, boolean drop) {
+        jdbcTemplate.execute("ALTER TABLE hits DETACH PARTITION " + partition);
+        jdbcTemplate.update(String.format(FOLD, partition));
+        if (drop)
+            jdbcTemplate.execute("DROP TABLE IF EXISTS " + partition);
+    }
+
+    public static String name(LocalDate day) {
+        return PREFIX + day.format(SUFFIX);
+    }
+
+    public static LocalDate day(String partition) {
+        return LocalDate.parse(partition.substring(PREFIX.length()), SUFFIX);
+    }
+}
@@ -1,14 +1,43 @@
 package ru.practicum.stats.server.hit.repository;
 
+import ru.practicum.stats.server.hit.enums.RollupGranularity;
+import ru.practicum.stats.server.hit.model.HistogramStats;
+import ru.practicum.stats.server.hit.model.Hit;
+import ru.practicum.stats.server.hit.model.TimeRange;
 import ru.practicum.stats.server.hit.model.ViewStats;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface HitRepository {
 
+    int saveHits(List<Hit> hits);
+
     List<ViewStats> getStats(LocalDateTime start,
                              LocalDateTime end,
                              List<String> uris,
                              boolean unique);
+
+    void streamStats(LocalDateTime start,
+                     LocalDateTime end,
+                     List<String> uris,
+                     boolean unique,
+                     Consumer<ViewStats> consumer);
+
+    List<ViewStats> getTopStats(LocalDateTime start, LocalDateTime end, int limit);
+
+    /**
+     * Hits per granularity bucket of [start, end], ordered by app, uri and bucket.
+     */
+    List<HistogramStats> getHistogram(LocalDateTime start,
+                                      LocalDateTime end,
+                                      List<String> uris,
+                                      boolean unique,
+                                      RollupGranularity granularity);
+
+    /**
+     * Counts hits for every window in one scan; the result lists follow the order of the windows.
+     */
+    List<List<ViewStats>> getWindowStats(List<TimeRange> windows, List<String> uris, boolean unique);
 }
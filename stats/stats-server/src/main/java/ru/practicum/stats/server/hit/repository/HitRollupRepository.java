@@ -0,0 +1,205 @@
+package ru.practicum.stats.server.hit.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.stats.server.hit.enums.RollupGranularity;
+import ru.practicum.stats.server.hit.model.HistogramStats;
+import ru.practicum.stats.server.hit.model.Hit;
+import ru.practicum.stats.server.hit.model.RangePlan;
+import ru.practicum.stats.server.hit.model.TimeRange;
+import ru.practicum.stats.server.hit.model.ViewStats;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Hit counts pre-aggregated per (app id, uri id) into minute, hour and day buckets.
+ * Buckets are maintained at ingest, in the same transaction as the raw rows.
+ */
+@Repository
+public class HitRollupRepository {
+
+    private static final String UPSERT_POSTGRESQL = "INSERT INTO hits_rollup (granularity, bucket, app_id, uri_id, hits) "
+            + "VALUES (?, ?, ?, ?, ?) "
+            + "ON CONFLICT (granularity, bucket, app_id, uri_id) DO UPDATE SET hits = hits_rollup.hits + EXCLUDED.hits";
+    private static final String UPSERT_H2 = "MERGE INTO hits_rollup t USING (VALUES (CAST(? AS VARCHAR(6)), "
+            + "CAST(? AS TIMESTAMP), CAST(? AS INT), CAST(? AS INT), CAST(? AS BIGINT))) "
+            + "s (granularity, bucket, app_id, uri_id, hits) "
+            + "ON t.granularity = s.granularity AND t.bucket = s.bucket AND t.app_id = s.app_id "
+            + "AND t.uri_id = s.uri_id "
+            + "WHEN MATCHED THEN UPDATE SET t.hits = t.hits + s.hits "
+            + "WHEN NOT MATCHED THEN INSERT (granularity, bucket, app_id, uri_id, hits) "
+            + "VALUES (s.granularity, s.bucket, s.app_id, s.uri_id, s.hits)";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate cursorTemplate;
+    private final boolean enabled;
+    private final String upsert;
+
+    public HitRollupRepository(NamedParameterJdbcTemplate jdbcTemplate,
+                               DataSource dataSource,
+                               @Value("${stats-server.rollups.enabled:true}") boolean enabled,
+                               @Value("${stats-server.repository.engine:jdbc}") String engine,
+                               @Value("${stats-server.stats.stream-fetch-size:1000}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.cursorTemplate = CursorTemplates.of(dataSource, fetchSize);
+        this.enabled = enabled && "jdbc".equals(engine);
+        this.upsert = this.enabled && DatabaseDialect.of(dataSource) == DatabaseDialect.H2 ? UPSERT_H2 : UPSERT_POSTGRESQL;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Transactional
+    public void addHits(List<Hit> hits) {
+        Map<BucketKey, Long> counts = new TreeMap<>();
+
+        for (Hit hit : hits) {
+            for (RollupGranularity granularity : RollupGranularity.values()) {
+                counts.merge(BucketKey.of(granularity, hit), 1L, Long::sum);
+            }
+        }
+        List<Object[]> batch = new ArrayList<>(counts.size());
+        counts.forEach((key, count) -> batch.add(new Object[]{
+                key.getGranularity().name(), key.getBucketTimestamp(), key.getAppId(), key.getUriId(), count}));
+
+        jdbcTemplate.getJdbcTemplate().batchUpdate(upsert, batch);
+    }
+
+    /**
+     * Answers a non-unique stats query from the coarsest rollup buckets inside [start, end)
+     * and reads raw or compacted hits only for the edges no bucket covers.
+     */
+    @Transactional(readOnly = true)
+    public List<ViewStats> getStats(RangePlan plan, List<String> uris) {
+        var params = new MapSqlParameterSource();
+        return jdbcTemplate.query(statsQuery(plan, uris, params), params, (rs, rowNum) ->
+                new ViewStats(rs.getString("uri"), rs.getString("app"), rs.getLong("total")));
+    }
+
+    @Transactional(readOnly = true)
+    public List<ViewStats> getTopStats(RangePlan plan, int limit) {
+        var params = new MapSqlParameterSource("limit", limit);
+        return jdbcTemplate.query(statsQuery(plan, null, params) + " LIMIT :limit", params, (rs, rowNum) ->
+                new ViewStats(rs.getString("uri"), rs.getString("app"), rs.getLong("total")));
+    }
+
+    /**
+     * Non-unique histogram for [start, end): whole buckets are read from the rollup of the same
+     * granularity, the whole minutes of the partial buckets at the edges from the minute rollup,
+     * and only what is left of the edges is counted from raw or compacted hits.
+     */
+    @Transactional(readOnly = true)
+    public List<HistogramStats> getHistogram(LocalDateTime start,
+                                             LocalDateTime end,
+                                             RollupGranularity granularity,
+                                             List<String> uris) {
+        var params = new MapSqlParameterSource("granularity", granularity.name());
+        var uriFilter = UriConditions.of(uris, params);
+        var fullStart = granularity.ceil(start);
+        var fullEnd = granularity.floor(end);
+        List<String> parts = new ArrayList<>();
+        List<TimeRange> edges = new ArrayList<>();
+
+        if (fullStart.isBefore(fullEnd)) {
+            params.addValue("fullStart", Timestamp.valueOf(fullStart))
+                    .addValue("fullEnd", Timestamp.valueOf(fullEnd));
+            parts.add("SELECT app_id, uri_id, bucket, hits FROM hits_rollup WHERE granularity = :granularity "
+                    + "AND bucket >= :fullStart AND bucket < :fullEnd" + uriFilter);
+            if (start.isBefore(fullStart))
+                edges.add(new TimeRange(start, fullStart));
+            if (fullEnd.isBefore(end))
+                edges.add(new TimeRange(fullEnd, end));
+        } else {
+            edges.add(new TimeRange(start, end));
+        }
+        List<TimeRange> minutes = new ArrayList<>();
+        List<TimeRange> raw = new ArrayList<>();
+        for (TimeRange edge : edges) {
+            var minuteStart = RollupGranularity.MINUTE.ceil(edge.getStart());
+            var minuteEnd = RollupGranularity.MINUTE.floor(edge.getEnd());
+            if (minuteStart.isBefore(minuteEnd)) {
+                minutes.add(new TimeRange(minuteStart, minuteEnd));
+                if (edge.getStart().isBefore(minuteStart))
+                    raw.add(new TimeRange(edge.getStart(), minuteStart));
+                if (minuteEnd.isBefore(edge.getEnd()))
+                    raw.add(new TimeRange(minuteEnd, edge.getEnd()));
+            } else {
+                raw.add(edge);
+            }
+        }
+        var unit = "'" + granularity.name().toLowerCase() + "'";
+        if (!minutes.isEmpty()) {
+            var bucket = "DATE_TRUNC(" + unit + ", bucket)";
+            params.addValue("minute", RollupGranularity.MINUTE.name());
+            parts.add("SELECT app_id, uri_id, " + bucket + " AS bucket, SUM(hits) AS hits FROM hits_rollup "
+                    + "WHERE granularity = :minute AND " + RangeConditions.of("bucket", minutes, params, "m")
+                    + uriFilter + " GROUP BY app_id, uri_id, " + bucket);
+        }
+        if (!raw.isEmpty()) {
+            var bucket = "DATE_TRUNC(" + unit + ", timestamp)";
+            parts.add("SELECT app_id, uri_id, " + bucket + " AS bucket, COUNT(*) AS hits FROM hits WHERE "
+                    + RangeConditions.of("timestamp", raw, params, "r") + uriFilter
+                    + " GROUP BY app_id, uri_id, " + bucket);
+            var compactedBucket = "DATE_TRUNC(" + unit + ", bucket)";
+            parts.add("SELECT app_id, uri_id, " + compactedBucket + " AS bucket, SUM(hits) AS hits "
+                    + "FROM hits_compacted WHERE " + RangeConditions.of("bucket", raw, params, "c") + uriFilter
+                    + " GROUP BY app_id, uri_id, " + compactedBucket);
+        }
+        var sql = "SELECT a.name AS app, u.name AS uri, s.bucket, s.total FROM ("
+                + "SELECT app_id, uri_id, bucket, SUM(hits) AS total FROM (" + String.join(" UNION ALL ", parts)
+                + ") p GROUP BY app_id, uri_id, bucket) s "
+                + "JOIN hit_apps a ON a.id = s.app_id JOIN hit_uris u ON u.id = s.uri_id "
+                + "ORDER BY a.name, u.name, s.bucket";
+
+        return jdbcTemplate.query(sql, params, (rs, rowNum) -> new HistogramStats(rs.getString("uri"),
+                rs.getString("app"), rs.getTimestamp("bucket").toLocalDateTime(), rs.getLong("total")));
+    }
+
+    /**
+     * Same as {@link #getStats} but hands rows to the consumer as they are read from a cursor.
+     */
+    @Transactional(readOnly = true)
+    public void streamStats(RangePlan plan, List<String> uris, Consumer<ViewStats> consumer) {
+        var params = new MapSqlParameterSource();
+        cursorTemplate.query(statsQuery(plan, uris, params), params, rs -> {
+            consumer.accept(new ViewStats(rs.getString("uri"), rs.getString("app"), rs.getLong("total")));
+        });
+    }
+
+    private String statsQuery(RangePlan plan, List<String> uris, MapSqlParameterSource params) {
+        var uriFilter = UriConditions.of(uris, params);
+        List<String> parts = new ArrayList<>();
+        var index = 0;
+
+        for (Map.Entry<RollupGranularity, List<TimeRange>> entry : plan.getBuckets().entrySet()) {
+            var granularity = "granularity" + index;
+            params.addValue(granularity, entry.getKey().name());
+            parts.add("SELECT app_id, uri_id, hits FROM hits_rollup WHERE granularity = :" + granularity
+                    + " AND " + RangeConditions.of("bucket", entry.getValue(), params, "b" + index) + uriFilter);
+            index++;
+        }
+        if (!plan.getRaw().isEmpty()) {
+            parts.add("SELECT app_id, uri_id, COUNT(*) AS hits FROM hits WHERE "
+                    + RangeConditions.of("timestamp", plan.getRaw(), params, "r") + uriFilter
+                    + " GROUP BY app_id, uri_id");
+            parts.add("SELECT app_id, uri_id, hits FROM hits_compacted WHERE "
+                    + RangeConditions.of("bucket", plan.getRaw(), params, "c") + uriFilter);
+        }
+        return "SELECT a.name AS app, u.name AS uri, s.total FROM ("
+                + "SELECT app_id, uri_id, SUM(hits) AS total FROM (" + String.join(" UNION ALL ", parts) + ") p "
+                + "GROUP BY app_id, uri_id) s "
+                + "JOIN hit_apps a ON a.id = s.app_id JOIN hit_uris u ON u.id = s.uri_id "
+                + "ORDER BY s.total DESC";
+    }
+}
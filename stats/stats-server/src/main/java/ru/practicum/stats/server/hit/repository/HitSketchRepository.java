@@ -0,0 +1,124 @@
+package ru.practicum.stats.server.hit.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.stats.server.hit.enums.RollupGranularity;
+import ru.practicum.stats.server.hit.model.Hit;
+import ru.practicum.stats.server.hit.model.RangePlan;
+import ru.practicum.stats.server.hit.model.TimeRange;
+import ru.practicum.stats.server.hit.model.ViewStats;
+import ru.practicum.stats.server.hit.sketch.HyperLogLog;
+import ru.practicum.stats.server.hit.utils.Hashes;
+import ru.practicum.stats.server.hit.utils.IpAddresses;
+
+import javax.sql.DataSource;
+import java.util.*;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * HyperLogLog sketches of visitor IPs per (app id, uri id) and minute, hour and day bucket.
+ * A sketch is stored as one row per non-empty register, so sketches are merged
+ * in SQL by taking MAX(rho) per register.
+ */
+@Repository
+public class HitSketchRepository {
+
+    private static final String UPSERT_POSTGRESQL = "INSERT INTO hits_sketch (granularity, bucket, app_id, uri_id, reg, rho) "
+            + "VALUES (?, ?, ?, ?, ?, ?) "
+            + "ON CONFLICT (granularity, bucket, app_id, uri_id, reg) DO UPDATE SET rho = EXCLUDED.rho "
+            + "WHERE hits_sketch.rho < EXCLUDED.rho";
+    private static final String UPSERT_H2 = "MERGE INTO hits_sketch t USING (VALUES (CAST(? AS VARCHAR(6)), "
+            + "CAST(? AS TIMESTAMP), CAST(? AS INT), CAST(? AS INT), CAST(? AS SMALLINT), CAST(? AS SMALLINT))) "
+            + "s (granularity, bucket, app_id, uri_id, reg, rho) "
+            + "ON t.granularity = s.granularity AND t.bucket = s.bucket AND t.app_id = s.app_id "
+            + "AND t.uri_id = s.uri_id AND t.reg = s.reg "
+            + "WHEN MATCHED AND t.rho < s.rho THEN UPDATE SET t.rho = s.rho "
+            + "WHEN NOT MATCHED THEN INSERT (granularity, bucket, app_id, uri_id, reg, rho) "
+            + "VALUES (s.granularity, s.bucket, s.app_id, s.uri_id, s.reg, s.rho)";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final String upsert;
+
+    public HitSketchRepository(NamedParameterJdbcTemplate jdbcTemplate,
+                               DataSource dataSource,
+                               @Value("${stats-server.sketches.enabled:true}") boolean enabled,
+                               @Value("${stats-server.repository.engine:jdbc}") String engine) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled && "jdbc".equals(engine);
+        this.upsert = this.enabled && DatabaseDialect.of(dataSource) == DatabaseDialect.H2 ? UPSERT_H2 : UPSERT_POSTGRESQL;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Transactional
+    public void addHits(List<Hit> hits) {
+        Map<BucketKey, Map<Integer, Integer>> sketches = new TreeMap<>();
+
+        for (Hit hit : hits) {
+            var hash = Hashes.hash(IpAddresses.toBytes(hit.getIp()));
+            var register = HyperLogLog.register(hash);
+            var rho = HyperLogLog.rho(hash);
+
+            for (RollupGranularity granularity : RollupGranularity.values()) {
+                sketches.computeIfAbsent(BucketKey.of(granularity, hit), key -> new TreeMap<>())
+                        .merge(register, rho, Math::max);
+            }
+        }
+        List<Object[]> batch = new ArrayList<>();
+        sketches.forEach((key, registers) -> registers.forEach((register, rho) -> batch.add(new Object[]{
+                key.getGranularity().name(), key.getBucketTimestamp(), key.getAppId(), key.getUriId(), register, rho})));
+
+        jdbcTemplate.getJdbcTemplate().batchUpdate(upsert, batch);
+    }
+
+    /**
+     * Estimates unique visitors by merging the bucket sketches inside the plan
+     * and adding the IPs of the raw edges no bucket covers.
+     */
+    @Transactional(readOnly = true)
+    public List<ViewStats> getUniqueStats(RangePlan plan, List<String> uris) {
+        Map<Long, HyperLogLog> sketches = new HashMap<>();
+        var params = new MapSqlParameterSource();
+        var uriFilter = UriConditions.of(uris, params);
+
+        if (!plan.getBuckets().isEmpty()) {
+            List<String> conditions = new ArrayList<>();
+            var index = 0;
+            for (Map.Entry<RollupGranularity, List<TimeRange>> entry : plan.getBuckets().entrySet()) {
+                var granularity = "granularity" + index;
+                params.addValue(granularity, entry.getKey().name());
+                conditions.add("(granularity = :" + granularity + " AND "
+                        + RangeConditions.of("bucket", entry.getValue(), params, "b" + index) + ")");
+                index++;
+            }
+            var sql = "SELECT app_id, uri_id, reg, MAX(rho) AS rho FROM hits_sketch WHERE ("
+                    + String.join(" OR ", conditions) + ")" + uriFilter + " GROUP BY app_id, uri_id, reg";
+
+            jdbcTemplate.query(sql, params, rs -> {
+                var key = AppUriKeys.key(rs.getInt("app_id"), rs.getInt("uri_id"));
+                sketches.computeIfAbsent(key, k -> new HyperLogLog()).update(rs.getInt("reg"), rs.getInt("rho"));
+            });
+        }
+        if (!plan.getRaw().isEmpty()) {
+            var sql = "SELECT app_id, uri_id, ip FROM hits WHERE "
+                    + RangeConditions.of("timestamp", plan.getRaw(), params, "r") + uriFilter;
+
+            jdbcTemplate.query(sql, params, rs -> {
+                var key = AppUriKeys.key(rs.getInt("app_id"), rs.getInt("uri_id"));
+                sketches.computeIfAbsent(key, k -> new HyperLogLog()).add(rs.getBytes("ip"));
+            });
+        }
+        return AppUriKeys.names(jdbcTemplate, sketches.keySet()).entrySet().stream()
+                .map(entry -> new ViewStats(entry.getValue().get(1), entry.getValue().get(0),
+                        sketches.get(entry.getKey()).estimate()))
+                .sorted(Comparator.comparing(ViewStats::getHits).reversed())
+                .collect(toList());
+    }
+}
@@ -0,0 +1,155 @@
+package ru.practicum.stats.server.hit.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.stats.server.hit.enums.RollupGranularity;
+import ru.practicum.stats.server.hit.model.HistogramStats;
+import ru.practicum.stats.server.hit.model.Hit;
+import ru.practicum.stats.server.hit.model.TimeRange;
+import ru.practicum.stats.server.hit.model.ViewStats;
+import ru.practicum.stats.server.hit.utils.IpAddresses;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+@Repository
+@Transactional(readOnly = true)
+@ConditionalOnProperty(name = "stats-server.repository.engine", havingValue = "jdbc", matchIfMissing = true)
+public class JdbcHitRepository implements HitRepository {
+
+    private static final int BATCH_SIZE = 500;
+    private static final String INSERT_HIT = "INSERT INTO hits (app_id, uri_id, ip, timestamp) VALUES (?, ?, ?, ?)";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate cursorTemplate;
+    private final HitDictionaryRepository hitDictionaryRepository;
+
+    public JdbcHitRepository(NamedParameterJdbcTemplate jdbcTemplate,
+                             DataSource dataSource,
+                             HitDictionaryRepository hitDictionaryRepository,
+                             @Value("${stats-server.stats.stream-fetch-size:1000}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.cursorTemplate = CursorTemplates.of(dataSource, fetchSize);
+        this.hitDictionaryRepository = hitDictionaryRepository;
+    }
+
+    @Override
+    @Transactional
+    public int saveHits(List<Hit> hits) {
+        if (hits.isEmpty())
+            return 0;
+
+        hitDictionaryRepository.encode(hits);
+        jdbcTemplate.getJdbcTemplate().batchUpdate(INSERT_HIT, hits, BATCH_SIZE, (statement, hit) -> {
+            statement.setInt(1, hit.getAppId());
+            statement.setInt(2, hit.getUriId());
+            statement.setBytes(3, IpAddresses.toBytes(hit.getIp()));
+            statement.setTimestamp(4, Timestamp.valueOf(hit.getTimestamp()));
+        });
+        return hits.size();
+    }
+
+    @Override
+    public List<ViewStats> getStats(LocalDateTime start,
+                                    LocalDateTime end,
+                                    List<String> uris,
+                                    boolean unique) {
+        var params = new MapSqlParameterSource();
+        return jdbcTemplate.query(statsQuery(start, end, uris, unique, params), params, (rs, rowNum) ->
+                new ViewStats(rs.getString("uri"), rs.getString("app"), rs.getLong("hits")));
+    }
+
+    @Override
+    public List<ViewStats> getTopStats(LocalDateTime start, LocalDateTime end, int limit) {
+        var params = new MapSqlParameterSource("limit", limit);
+        return jdbcTemplate.query(statsQuery(start, end, null, false, params) + " LIMIT :limit", params,
+                (rs, rowNum) -> new ViewStats(rs.getString("uri"), rs.getString("app"), rs.getLong("hits")));
+    }
+
+    @Override
+    public void streamStats(LocalDateTime start,
+                            LocalDateTime end,
+                            List<String> uris,
+                            boolean unique,
+                            Consumer<ViewStats> consumer) {
+        var params = new MapSqlParameterSource();
+        cursorTemplate.query(statsQuery(start, end, uris, unique, params), params, rs -> {
+            consumer.accept(new ViewStats(rs.getString("uri"), rs.getString("app"), rs.getLong("hits")));
+        });
+    }
+
+    @Override
+    public List<HistogramStats> getHistogram(LocalDateTime start,
+                                             LocalDateTime end,
+                                             List<String> uris,
+                                             boolean unique,
+                                             RollupGranularity granularity) {
+        var params = new MapSqlParameterSource()
+                .addValue("start", Timestamp.valueOf(start))
+                .addValue("end", Timestamp.valueOf(end));
+        var bucket = "DATE_TRUNC('" + granularity.name().toLowerCase() + "', timestamp)";
+        var sql = "SELECT a.name AS app, u.name AS uri, s.bucket, s.hits FROM ("
+                + "SELECT app_id, uri_id, " + bucket + " AS bucket, "
+                + (unique ? "COUNT(DISTINCT ip)" : "COUNT(*)") + " AS hits FROM hits "
+                + "WHERE timestamp BETWEEN :start AND :end" + UriConditions.of(uris, params)
+                + " GROUP BY app_id, uri_id, " + bucket + ") s "
+                + "JOIN hit_apps a ON a.id = s.app_id JOIN hit_uris u ON u.id = s.uri_id "
+                + "ORDER BY a.name, u.name, s.bucket";
+
+        return jdbcTemplate.query(sql, params, (rs, rowNum) -> new HistogramStats(rs.getString("uri"),
+                rs.getString("app"), rs.getTimestamp("bucket").toLocalDateTime(), rs.getLong("hits")));
+    }
+
+    @Override
+    public List<List<ViewStats>> getWindowStats(List<TimeRange> windows, List<String> uris, boolean unique) {
+        var params = new MapSqlParameterSource();
+        var filter = RangeConditions.of("timestamp", windows, params, "w") + UriConditions.of(uris, params);
+        List<String> columns = new ArrayList<>();
+        for (int i = 0; i < windows.size(); i++) {
+            var condition = "timestamp >= :wstart" + i + " AND timestamp < :wend" + i;
+            columns.add((unique
+                    ? "COUNT(DISTINCT CASE WHEN " + condition + " THEN ip END)"
+                    : "COUNT(CASE WHEN " + condition + " THEN 1 END)") + " AS w" + i);
+        }
+        var sql = "SELECT a.name AS app, u.name AS uri, s.* FROM ("
+                + "SELECT app_id, uri_id, " + String.join(", ", columns) + " FROM hits WHERE " + filter
+                + " GROUP BY app_id, uri_id) s "
+                + "JOIN hit_apps a ON a.id = s.app_id JOIN hit_uris u ON u.id = s.uri_id";
+
+        List<List<ViewStats>> stats = new ArrayList<>();
+        windows.forEach(window -> stats.add(new ArrayList<>()));
+        jdbcTemplate.query(sql, params, rs -> {
+            for (int i = 0; i < windows.size(); i++) {
+                var hits = rs.getLong("w" + i);
+                if (hits > 0)
+                    stats.get(i).add(new ViewStats(rs.getString("uri"), rs.getString("app"), hits));
+            }
+        });
+        stats.forEach(window -> window.sort(Comparator.comparing(ViewStats::getHits).reversed()));
+        return stats;
+    }
+
+    private String statsQuery(LocalDateTime start,
+                              LocalDateTime end,
+                              List<String> uris,
+                              boolean unique,
+                              MapSqlParameterSource params) {
+        params.addValue("start", Timestamp.valueOf(start))
+                .addValue("end", Timestamp.valueOf(end));
+        return "SELECT a.name AS app, u.name AS uri, s.hits FROM ("
+                + "SELECT app_id, uri_id, " + (unique ? "COUNT(DISTINCT ip)" : "COUNT(*)") + " AS hits FROM hits "
+                + "WHERE timestamp BETWEEN :start AND :end" + UriConditions.of(uris, params)
+                + " GROUP BY app_id, uri_id) s "
+                + "JOIN hit_apps a ON a.id = s.app_id JOIN hit_uris u ON u.id = s.uri_id "
+                + "ORDER BY s.hits DESC";
+    }
+}
@@ -0,0 +1,27 @@
+package ru.practicum.stats.server.hit.repository;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import ru.practicum.stats.server.hit.model.TimeRange;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+class RangeConditions {
+
+    private RangeConditions() {
+    }
+
+    static String of(String column, List<TimeRange> ranges, MapSqlParameterSource params, String prefix) {
+        List<String> conditions = new ArrayList<>();
+
+        for (int i = 0; i < ranges.size(); i++) {
+            var start = prefix + "start" + i;
+            var end = prefix + "end" + i;
+            params.addValue(start, Timestamp.valueOf(ranges.get(i).getStart()));
+            params.addValue(end, Timestamp.valueOf(ranges.get(i).getEnd()));
+            conditions.add("(" + column + " >= :" + start + " AND " + column + " < :" + end + ")");
+        }
+        return "(" + String.join(" OR ", conditions) + ")";
+    }
+}
@@ -0,0 +1,396 @@
+package ru.practicum.stats.server.hit.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+import ru.practicum.stats.server.hit.enums.RollupGranularity;
+import ru.practicum.stats.server.hit.model.HistogramStats;
+import ru.practicum.stats.server.hit.model.Hit;
+import ru.practicum.stats.server.hit.model.TimeRange;
+import ru.practicum.stats.server.hit.model.ViewStats;
+import ru.practicum.stats.server.hit.segment.Segment;
+import ru.practicum.stats.server.hit.segment.SegmentDictionary;
+import ru.practicum.stats.server.hit.utils.IpAddresses;
+import ru.practicum.stats.server.hit.utils.UriPatterns;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.time.temporal.ChronoUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Stores hits in append-only, memory-mapped columnar segment files instead of the database.
+ * App, uri and ip values are interned into file-backed dictionaries, and every query is a
+ * sequential scan over the timestamp column of the segments whose time span overlaps it.
+ * The dictionaries are also held in memory in full, so heap grows with the number of
+ * distinct apps, uris and IPs ever seen. A write spanning several segments fills all of
+ * them before committing any, so a failure while writing leaves nothing visible; only a
+ * crash between the commits themselves can leave the first segments' part committed.
+ */
+@Slf4j
+@Repository
+@ConditionalOnProperty(name = "stats-server.repository.engine", havingValue = "segment")
+public class SegmentHitRepository implements HitRepository {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    private final Path directory;
+    private final int rowsPerSegment;
+    private final boolean fsync;
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private SegmentDictionary apps;
+    private SegmentDictionary uris;
+    private SegmentDictionary ips;
+    private long nextSequence;
+
+    public SegmentHitRepository(@Value("${stats-server.segments.dir:data/segments}") String directory,
+                                @Value("${stats-server.segments.rows-per-segment:1048576}") int rowsPerSegment,
+                                @Value("${stats-server.segments.fsync:true}") boolean fsync) {
+        this.directory = Paths.get(directory);
+        this.rowsPerSegment = rowsPerSegment;
+        this.fsync = fsync;
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        Files.createDirectories(directory);
+        apps = SegmentDictionary.open(directory.resolve("apps.dict"));
+        uris = SegmentDictionary.open(directory.resolve("uris.dict"));
+        ips = SegmentDictionary.open(directory.resolve("ips.dict"));
+
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.collect(toList());
+        }
+        for (Path file : files) {
+            if (Segment.isTemp(file)) {
+                log.warn("Deleting unfinished hit segment {}", file);
+                Files.delete(file);
+            }
+        }
+        files = files.stream()
+                .filter(path -> sequence(path) >= 0)
+                .sorted(Comparator.comparingLong(SegmentHitRepository::sequence))
+                .collect(toList());
+        var rows = 0L;
+        for (Path file : files) {
+            var segment = Segment.open(file);
+            segments.add(segment);
+            rows += segment.getRows();
+            nextSequence = sequence(file) + 1;
+        }
+        log.info("Opened {} hit segments with {} rows in {}", segments.size(), rows, directory);
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        for (Segment segment : segments) {
+            segment.close();
+        }
+        apps.close();
+        uris.close();
+        ips.close();
+    }
+
+    @Override
+    public synchronized int saveHits(List<Hit> hits) {
+        if (hits.isEmpty())
+            return 0;
+
+        try {
+            var ipIds = new int[hits.size()];
+            for (int i = 0; i < hits.size(); i++) {
+                var hit = hits.get(i);
+                hit.setAppId(apps.idOf(hit.getApp().getBytes(UTF_8)));
+                hit.setUriId(uris.idOf(hit.getUri().getBytes(UTF_8)));
+                ipIds[i] = ips.idOf(IpAddresses.toBytes(hit.getIp()));
+            }
+            apps.flush(fsync);
+            uris.flush(fsync);
+            ips.flush(fsync);
+
+            List<Segment> targets = new ArrayList<>();
+            List<long[]> commits = new ArrayList<>();
+            var written = 0;
+            while (written < hits.size()) {
+                var segment = targets.isEmpty() ? writableSegment() : newSegment();
+                var count = Math.min(segment.remaining(), hits.size() - written);
+                var min = Long.MAX_VALUE;
+                var max = Long.MIN_VALUE;
+
+                for (int i = 0; i < count; i++) {
+                    var hit = hits.get(written + i);
+                    var timestamp = toSecond(hit.getTimestamp());
+                    segment.write(i, timestamp, hit.getAppId(), hit.getUriId(), ipIds[written + i]);
+                    min = Math.min(min, timestamp);
+                    max = Math.max(max, timestamp);
+                }
+                targets.add(segment);
+                commits.add(new long[]{count, min, max});
+                written += count;
+            }
+            for (int i = 0; i < targets.size(); i++) {
+                var commit = commits.get(i);
+                targets.get(i).commit((int) commit[0], commit[1], commit[2], fsync);
+            }
+            return written;
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    @Override
+    public List<ViewStats> getStats(LocalDateTime start,
+                                    LocalDateTime end,
+                                    List<String> uris,
+                                    boolean unique) {
+        var range = new long[]{ceilSecond(start), toSecond(end) + 1};
+        return aggregate(List.of(range), uris, unique).get(0);
+    }
+
+    @Override
+    public List<ViewStats> getTopStats(LocalDateTime start, LocalDateTime end, int limit) {
+        var stats = getStats(start, end, null, false);
+        return stats.subList(0, Math.min(limit, stats.size()));
+    }
+
+    /**
+     * Not a true stream: the segments are aggregated in full as in getStats before the first row
+     * is handed over. Memory grows with the distinct (app, uri) pairs for plain counts and with
+     * the matching hits for unique ones.
+     */
+    @Override
+    public void streamStats(LocalDateTime start,
+                            LocalDateTime end,
+                            List<String> uris,
+                            boolean unique,
+                            Consumer<ViewStats> consumer) {
+        getStats(start, end, uris, unique).forEach(consumer);
+    }
+
+    @Override
+    public List<HistogramStats> getHistogram(LocalDateTime start,
+                                             LocalDateTime end,
+                                             List<String> uris,
+                                             boolean unique,
+                                             RollupGranularity granularity) {
+        var uriIds = uriIds(uris);
+        var from = ceilSecond(start);
+        var to = toSecond(end) + 1;
+        var bucketSeconds = granularity.getUnit().getDuration().getSeconds();
+        Map<BucketKey, Long> counts = new HashMap<>();
+        Map<BucketKey, Integer> keyIndex = new HashMap<>();
+        List<BucketKey> keys = new ArrayList<>();
+        var pairs = new PairList();
+
+        for (Segment segment : segments) {
+            var rows = segment.getRows();
+            if (rows == 0 || segment.getMaxTimestamp() < from || segment.getMinTimestamp() >= to)
+                continue;
+
+            for (int row = 0; row < rows; row++) {
+                var timestamp = segment.timestamp(row);
+                if (timestamp < from || timestamp >= to)
+                    continue;
+
+                var uriId = segment.uriId(row);
+                if (uriIds != null && !uriIds.contains(uriId))
+                    continue;
+
+                var bucket = LocalDateTime.ofEpochSecond(Math.floorDiv(timestamp, bucketSeconds) * bucketSeconds,
+                        0, ZoneOffset.UTC);
+                var key = new BucketKey(granularity, bucket, segment.appId(row), uriId);
+                if (unique) {
+                    var index = keyIndex.computeIfAbsent(key, k -> {
+                        keys.add(k);
+                        return keys.size() - 1;
+                    });
+                    pairs.add(((long) index << 32) | (segment.ipId(row) & 0xffffffffL));
+                } else {
+                    counts.merge(key, 1L, Long::sum);
+                }
+            }
+        }
+        if (unique)
+            counts = pairs.countDistinct(keys);
+
+        return counts.entrySet().stream()
+                .map(entry -> new HistogramStats(name(this.uris, entry.getKey().getUriId()),
+                        name(apps, entry.getKey().getAppId()), entry.getKey().getBucket(), entry.getValue()))
+                .sorted(Comparator.comparing(HistogramStats::getApp)
+                        .thenComparing(HistogramStats::getUri)
+                        .thenComparing(HistogramStats::getBucket))
+                .collect(toList());
+    }
+
+    @Override
+    public List<List<ViewStats>> getWindowStats(List<TimeRange> windows, List<String> uris, boolean unique) {
+        return aggregate(windows.stream()
+                .map(window -> new long[]{ceilSecond(window.getStart()), ceilSecond(window.getEnd())})
+                .collect(toList()), uris, unique);
+    }
+
+    /**
+     * Counts hits per (app id, uri id) for each half-open [from, to) second range in a single scan.
+     * Unique counts collect (key, ip id) pairs and count the distinct ones after sorting.
+     */
+    private List<List<ViewStats>> aggregate(List<long[]> ranges, List<String> uriNames, boolean unique) {
+        var uriIds = uriIds(uriNames);
+        List<Map<Long, Long>> counts = new ArrayList<>();
+        List<PairList> pairs = new ArrayList<>();
+        Map<Long, Integer> keyIndex = new HashMap<>();
+        List<Long> keys = new ArrayList<>();
+        ranges.forEach(range -> {
+            counts.add(new HashMap<>());
+            pairs.add(new PairList());
+        });
+        var from = ranges.stream().mapToLong(range -> range[0]).min().orElse(0);
+        var to = ranges.stream().mapToLong(range -> range[1]).max().orElse(0);
+
+        for (Segment segment : segments) {
+            var rows = segment.getRows();
+            if (rows == 0 || segment.getMaxTimestamp() < from || segment.getMinTimestamp() >= to)
+                continue;
+
+            for (int row = 0; row < rows; row++) {
+                var timestamp = segment.timestamp(row);
+                if (timestamp < from || timestamp >= to)
+                    continue;
+
+                var uriId = segment.uriId(row);
+                if (uriIds != null && !uriIds.contains(uriId))
+                    continue;
+
+                var key = key(segment.appId(row), uriId);
+                for (int i = 0; i < ranges.size(); i++) {
+                    var range = ranges.get(i);
+                    if (timestamp < range[0] || timestamp >= range[1])
+                        continue;
+
+                    if (unique) {
+                        var index = keyIndex.computeIfAbsent(key, k -> {
+                            keys.add(k);
+                            return keys.size() - 1;
+                        });
+                        pairs.get(i).add(((long) index << 32) | (segment.ipId(row) & 0xffffffffL));
+                    } else {
+                        counts.get(i).merge(key, 1L, Long::sum);
+                    }
+                }
+            }
+        }
+        List<List<ViewStats>> result = new ArrayList<>();
+        for (int i = 0; i < ranges.size(); i++) {
+            var windowCounts = unique ? pairs.get(i).countDistinct(keys) : counts.get(i);
+            List<ViewStats> stats = new ArrayList<>();
+            windowCounts.forEach((key, hits) -> stats.add(new ViewStats(
+                    name(this.uris, (int) (long) key), name(apps, (int) (key >>> 32)), hits)));
+            stats.sort(Comparator.comparing(ViewStats::getHits).reversed());
+            result.add(stats);
+        }
+        return result;
+    }
+
+    private Set<Integer> uriIds(List<String> names) {
+        if (names == null)
+            return null;
+
+        Set<Integer> ids = new HashSet<>();
+        for (String name : names) {
+            var id = uris.find(name.getBytes(UTF_8));
+            if (id >= 0)
+                ids.add(id);
+        }
+        if (names.stream().anyMatch(UriPatterns::isPattern)) {
+            var matcher = UriPatterns.matcher(names);
+            for (int id = 0; id < uris.size(); id++) {
+                if (matcher.test(name(uris, id)))
+                    ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    private Segment writableSegment() throws IOException {
+        if (!segments.isEmpty()) {
+            var last = segments.get(segments.size() - 1);
+            if (last.remaining() > 0)
+                return last;
+        }
+        return newSegment();
+    }
+
+    private Segment newSegment() throws IOException {
+        var path = directory.resolve(String.format("%s%010d%s", SEGMENT_PREFIX, nextSequence++, SEGMENT_SUFFIX));
+        var segment = Segment.create(path, rowsPerSegment);
+        segments.add(segment);
+        log.debug("Created hit segment {}", path);
+        return segment;
+    }
+
+    private static long sequence(Path path) {
+        var name = path.getFileName().toString();
+        if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX))
+            return -1;
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException exception) {
+            return -1;
+        }
+    }
+
+    private static String name(SegmentDictionary dictionary, int id) {
+        return new String(dictionary.get(id), UTF_8);
+    }
+
+    private static long key(int appId, int uriId) {
+        return ((long) appId << 32) | (uriId & 0xffffffffL);
+    }
+
+    private static long toSecond(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static long ceilSecond(LocalDateTime dateTime) {
+        var second = toSecond(dateTime);
+        return dateTime.truncatedTo(SECONDS).equals(dateTime) ? second : second + 1;
+    }
+
+    private static class PairList {
+
+        private long[] values = new long[16];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        <K> Map<K, Long> countDistinct(List<K> keys) {
+            Arrays.sort(values, 0, size);
+            Map<K, Long> counts = new HashMap<>();
+            for (int i = 0; i < size; i++) {
+                if (i > 0 && values[i] == values[i - 1])
+                    continue;
+                counts.merge(keys.get((int) (values[i] >>> 32)), 1L, Long::sum);
+            }
+            return counts;
+        }
+    }
+}
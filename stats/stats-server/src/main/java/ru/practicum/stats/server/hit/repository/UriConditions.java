@@ -0,0 +1,43 @@
+package ru.practicum.stats.server.hit.repository;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import ru.practicum.stats.server.hit.utils.UriPatterns;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Resolves the uris filter against the hit_uris dictionary, so exact names and
+ * wildcard patterns are matched once per distinct uri rather than per hit.
+ */
+class UriConditions {
+
+    private UriConditions() {
+    }
+
+    static String of(List<String> uris, MapSqlParameterSource params) {
+        if (uris == null)
+            return "";
+
+        List<String> conditions = new ArrayList<>();
+        var exact = uris.stream()
+                .filter(uri -> !UriPatterns.isPattern(uri))
+                .collect(toList());
+        if (!exact.isEmpty()) {
+            params.addValue("uris", exact);
+            conditions.add("name IN (:uris)");
+        }
+        var patterns = uris.stream()
+                .filter(UriPatterns::isPattern)
+                .collect(toList());
+        for (int i = 0; i < patterns.size(); i++) {
+            params.addValue("uriPattern" + i, UriPatterns.toLike(patterns.get(i)));
+            conditions.add("name LIKE :uriPattern" + i + " ESCAPE '\\'");
+        }
+        if (conditions.isEmpty())
+            return " AND 1 = 0";
+        return " AND uri_id IN (SELECT id FROM hit_uris WHERE " + String.join(" OR ", conditions) + ")";
+    }
+}
@@ -0,0 +1,187 @@
+package ru.practicum.stats.server.hit.segment;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Append-only, memory-mapped segment file laid out column by column:
+ * header | timestamp (long) x capacity | app id (int) x capacity | uri id (int) x capacity | ip id (int) x capacity.
+ * The row count in the header is written last and is the commit marker: rows past it
+ * are ignored when the file is reopened and overwritten by the next append.
+ * A new file gets its header in a temporary file that is renamed into place once it is
+ * on disk, so a segment is never seen without a header.
+ */
+public class Segment implements Closeable {
+
+    private static final int MAGIC = 0x48495453;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int ROWS_OFFSET = 12;
+    private static final int MIN_TIMESTAMP_OFFSET = 16;
+    private static final int MAX_TIMESTAMP_OFFSET = 24;
+    private static final int ROW_SIZE = Long.BYTES + 3 * Integer.BYTES;
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final int appOffset;
+    private final int uriOffset;
+    private final int ipOffset;
+    private volatile long minTimestamp;
+    private volatile long maxTimestamp;
+    private volatile int rows;
+
+    private Segment(Path path, FileChannel channel, int capacity) throws IOException {
+        this.path = path;
+        this.channel = channel;
+        this.capacity = capacity;
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * ROW_SIZE);
+        this.appOffset = HEADER_SIZE + capacity * Long.BYTES;
+        this.uriOffset = appOffset + capacity * Integer.BYTES;
+        this.ipOffset = uriOffset + capacity * Integer.BYTES;
+    }
+
+    public static Segment create(Path path, int capacity) throws IOException {
+        if (capacity <= 0 || (long) capacity * ROW_SIZE > Integer.MAX_VALUE - HEADER_SIZE)
+            throw new IllegalArgumentException("Segment capacity out of range: " + capacity);
+
+        if (Files.exists(path))
+            throw new FileAlreadyExistsException(path.toString());
+
+        var temp = tempPath(path);
+        try (var channel = FileChannel.open(temp, CREATE, TRUNCATE_EXISTING, WRITE)) {
+            var header = ByteBuffer.allocate(HEADER_SIZE)
+                    .putInt(MAGIC)
+                    .putInt(VERSION)
+                    .putInt(capacity)
+                    .putInt(0)
+                    .putLong(Long.MAX_VALUE)
+                    .putLong(Long.MIN_VALUE)
+                    .flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        }
+        Files.move(temp, path, ATOMIC_MOVE);
+        try (var directory = FileChannel.open(path.toAbsolutePath().getParent(), READ)) {
+            directory.force(true);
+        }
+        return open(path);
+    }
+
+    /**
+     * Whether the file is a header left behind by a create that did not finish.
+     */
+    public static boolean isTemp(Path path) {
+        return path.getFileName().toString().endsWith(TEMP_SUFFIX);
+    }
+
+    public static Segment open(Path path) throws IOException {
+        var channel = FileChannel.open(path, READ, WRITE);
+        var header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            channel.close();
+            throw new IOException("Not a hit segment: " + path);
+        }
+        var segment = new Segment(path, channel, header.getInt(CAPACITY_OFFSET));
+        segment.load();
+        return segment;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public long getMinTimestamp() {
+        return minTimestamp;
+    }
+
+    public long getMaxTimestamp() {
+        return maxTimestamp;
+    }
+
+    public int remaining() {
+        return capacity - rows;
+    }
+
+    /**
+     * Writes the row at position getRows() + index without making it visible.
+     */
+    public void write(int index, long timestamp, int appId, int uriId, int ipId) {
+        var row = rows + index;
+        buffer.putLong(HEADER_SIZE + row * Long.BYTES, timestamp);
+        buffer.putInt(appOffset + row * Integer.BYTES, appId);
+        buffer.putInt(uriOffset + row * Integer.BYTES, uriId);
+        buffer.putInt(ipOffset + row * Integer.BYTES, ipId);
+    }
+
+    /**
+     * Publishes the next count written rows. With fsync the rows reach the disk before
+     * the row count does, so a torn commit is never read back after a power loss.
+     */
+    public void commit(int count, long min, long max, boolean fsync) {
+        if (fsync)
+            buffer.force();
+
+        minTimestamp = Math.min(minTimestamp, min);
+        maxTimestamp = Math.max(maxTimestamp, max);
+        buffer.putLong(MIN_TIMESTAMP_OFFSET, minTimestamp);
+        buffer.putLong(MAX_TIMESTAMP_OFFSET, maxTimestamp);
+        buffer.putInt(ROWS_OFFSET, rows + count);
+        rows += count;
+
+        if (fsync)
+            buffer.force();
+    }
+
+    public long timestamp(int row) {
+        return buffer.getLong(HEADER_SIZE + row * Long.BYTES);
+    }
+
+    public int appId(int row) {
+        return buffer.getInt(appOffset + row * Integer.BYTES);
+    }
+
+    public int uriId(int row) {
+        return buffer.getInt(uriOffset + row * Integer.BYTES);
+    }
+
+    public int ipId(int row) {
+        return buffer.getInt(ipOffset + row * Integer.BYTES);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static Path tempPath(Path path) {
+        return path.resolveSibling(path.getFileName() + TEMP_SUFFIX);
+    }
+
+    private void load() {
+        minTimestamp = buffer.getLong(MIN_TIMESTAMP_OFFSET);
+        maxTimestamp = buffer.getLong(MAX_TIMESTAMP_OFFSET);
+        rows = Math.min(Math.max(buffer.getInt(ROWS_OFFSET), 0), capacity);
+    }
+}
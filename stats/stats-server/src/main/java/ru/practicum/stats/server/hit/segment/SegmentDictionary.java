@@ -0,0 +1,118 @@
+package ru.practicum.stats.server.hit.segment;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Append-only dictionary file of length-prefixed byte strings; an entry's id is its position.
+ * New entries are buffered until {@link #flush} so that they reach the file before
+ * any segment row referring to them is committed. A torn entry at the end of the file
+ * is cut off when the dictionary is opened.
+ */
+@Slf4j
+public class SegmentDictionary implements Closeable {
+
+    private static final int MAX_ENTRY_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    private final Map<ByteBuffer, Integer> ids = new HashMap<>();
+    private final List<byte[]> entries = new ArrayList<>();
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final DataOutputStream pendingOut = new DataOutputStream(pending);
+
+    private SegmentDictionary(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    public static SegmentDictionary open(Path path) throws IOException {
+        var dictionary = new SegmentDictionary(FileChannel.open(path, CREATE, READ, WRITE));
+        dictionary.load(path);
+        return dictionary;
+    }
+
+    public synchronized int idOf(byte[] value) throws IOException {
+        var id = ids.get(ByteBuffer.wrap(value));
+        if (id != null)
+            return id;
+
+        if (value.length > MAX_ENTRY_SIZE)
+            throw new IllegalArgumentException("Dictionary entry too long: " + value.length);
+        pendingOut.writeInt(value.length);
+        pendingOut.write(value);
+        id = entries.size();
+        entries.add(value);
+        ids.put(ByteBuffer.wrap(value), id);
+        return id;
+    }
+
+    /**
+     * Id of an existing entry, or -1.
+     */
+    public synchronized int find(byte[] value) {
+        return ids.getOrDefault(ByteBuffer.wrap(value), -1);
+    }
+
+    public synchronized byte[] get(int id) {
+        return entries.get(id);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void flush(boolean fsync) throws IOException {
+        if (pending.size() > 0) {
+            var bytes = ByteBuffer.wrap(pending.toByteArray());
+            while (bytes.hasRemaining()) {
+                channel.write(bytes, channel.size());
+            }
+            pending.reset();
+        }
+        if (fsync)
+            channel.force(false);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flush(true);
+        channel.close();
+    }
+
+    private void load(Path path) throws IOException {
+        var size = channel.size();
+        var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        var position = 0L;
+
+        while (size - position >= Integer.BYTES) {
+            var length = buffer.getInt((int) position);
+            if (length < 0 || length > MAX_ENTRY_SIZE || size - position - Integer.BYTES < length)
+                break;
+
+            var value = new byte[length];
+            buffer.position((int) position + Integer.BYTES);
+            buffer.get(value);
+            ids.put(ByteBuffer.wrap(value), entries.size());
+            entries.add(value);
+            position += Integer.BYTES + length;
+        }
+        if (position < size) {
+            log.warn("Truncating torn dictionary entry in {} at {} of {} bytes", path, position, size);
+            channel.truncate(position);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package ru.practicum.stats.server.hit.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.server.hit.exception.IngestOverloadedException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Caps the ingest requests being processed at once, counting a request until its hits are
+ * stored or queued. A request waits at most max-wait-ms for a slot and is otherwise rejected
+ * at once with 503 and Retry-After, so a slow database sheds load instead of piling
+ * requests up on servlet threads. Requests waiting for a group commit give their slot back
+ * once queued; the committer bounds them by its own capacity, and holding the slots would cap
+ * a group at max-in-flight requests.
+ */
+@Component
+public class HitAdmissionControl {
+
+    private final boolean enabled;
+    private final int maxInFlight;
+    private final long maxWaitMs;
+    private final long retryAfterSeconds;
+    private final Semaphore permits;
+    private final Timer waitTimer;
+    private final Counter rejectedCounter;
+
+    public HitAdmissionControl(MeterRegistry meterRegistry,
+                               @Value("${stats-server.admission.enabled:true}") boolean enabled,
+                               @Value("${stats-server.admission.max-in-flight:64}") int maxInFlight,
+                               @Value("${stats-server.admission.max-wait-ms:50}") long maxWaitMs,
+                               @Value("${stats-server.admission.retry-after-seconds:1}") long retryAfterSeconds) {
+        this.enabled = enabled;
+        this.maxInFlight = maxInFlight;
+        this.maxWaitMs = maxWaitMs;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.permits = new Semaphore(maxInFlight);
+
+        waitTimer = meterRegistry.timer("stats.hits.admission.wait");
+        rejectedCounter = meterRegistry.counter("stats.hits.admission.rejected");
+        meterRegistry.gauge("stats.hits.admission.in-flight", permits, p -> maxInFlight - p.availablePermits());
+    }
+
+    public int inFlight() {
+        return maxInFlight - permits.availablePermits();
+    }
+
+    public <T> CompletableFuture<T> admit(Supplier<CompletableFuture<T>> ingest) {
+        if (!enabled)
+            return ingest.get();
+
+        acquire();
+        try {
+            return ingest.get();
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void acquire() {
+        var start = System.nanoTime();
+        var acquired = false;
+        try {
+            acquired = permits.tryAcquire(maxWaitMs, MILLISECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        waitTimer.record(System.nanoTime() - start, NANOSECONDS);
+        if (!acquired) {
+            rejectedCounter.increment();
+            throw new IngestOverloadedException("more than " + maxInFlight + " ingest requests in flight",
+                    retryAfterSeconds);
+        }
+    }
+}
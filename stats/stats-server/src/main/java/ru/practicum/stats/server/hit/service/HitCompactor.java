@@ -0,0 +1,116 @@
+package ru.practicum.stats.server.hit.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.server.hit.enums.RollupGranularity;
+import ru.practicum.stats.server.hit.repository.HitCompactionRepository;
+import ru.practicum.stats.server.hit.repository.HitRollupRepository;
+import ru.practicum.stats.server.hit.repository.HitSketchRepository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Folds raw hits older than max-age into per-second counts in bounded batches. Below the
+ * compaction horizon non-unique counts stay exact, unique estimates widen the range to
+ * whole minutes of the sketches, and exact unique counts are only kept for whole hours
+ * of the bitmaps; any other exact unique query there is rejected. A run stops early while
+ * more than max-buffer-depth hits wait in the write-behind buffer or the group committer, or
+ * more than max-in-flight ingest requests are being processed.
+ */
+@Slf4j
+@Component
+public class HitCompactor {
+
+    private final HitCompactionRepository hitCompactionRepository;
+    private final HitPartitionManager hitPartitionManager;
+    private final HitWriteBehindBuffer hitBuffer;
+    private final HitGroupCommitter hitGroupCommitter;
+    private final HitAdmissionControl hitAdmissionControl;
+    private final boolean enabled;
+    private final int maxAgeDays;
+    private final int batchSize;
+    private final long pauseMs;
+    private final int maxBufferDepth;
+    private final int maxInFlight;
+    private final Counter compactedCounter;
+
+    public HitCompactor(HitCompactionRepository hitCompactionRepository,
+                        HitPartitionManager hitPartitionManager,
+                        HitRollupRepository hitRollupRepository,
+                        HitSketchRepository hitSketchRepository,
+                        HitWriteBehindBuffer hitBuffer,
+                        HitGroupCommitter hitGroupCommitter,
+                        HitAdmissionControl hitAdmissionControl,
+                        MeterRegistry meterRegistry,
+                        @Value("${stats-server.compaction.enabled:false}") boolean enabled,
+                        @Value("${stats-server.compaction.max-age-days:30}") int maxAgeDays,
+                        @Value("${stats-server.compaction.batch-size:5000}") int batchSize,
+                        @Value("${stats-server.compaction.pause-ms:200}") long pauseMs,
+                        @Value("${stats-server.compaction.max-buffer-depth:1000}") int maxBufferDepth,
+                        @Value("${stats-server.compaction.max-in-flight:16}") int maxInFlight) {
+        this.hitCompactionRepository = hitCompactionRepository;
+        this.hitPartitionManager = hitPartitionManager;
+        this.hitBuffer = hitBuffer;
+        this.hitGroupCommitter = hitGroupCommitter;
+        this.hitAdmissionControl = hitAdmissionControl;
+        this.enabled = enabled && hitRollupRepository.isEnabled() && hitSketchRepository.isEnabled();
+        this.maxAgeDays = maxAgeDays;
+        this.batchSize = batchSize;
+        this.pauseMs = pauseMs;
+        this.maxBufferDepth = maxBufferDepth;
+        this.maxInFlight = maxInFlight;
+        this.compactedCounter = meterRegistry.counter("stats.hits.compaction.compacted");
+
+        if (enabled && !this.enabled)
+            log.warn("Hit compaction needs rollups and sketches of the jdbc engine and stays disabled");
+    }
+
+    /**
+     * Start of the range still backed by raw hits, if compaction or partition retention is enabled.
+     */
+    public Optional<LocalDateTime> getHorizon() {
+        var retention = hitPartitionManager.getRetentionHorizon();
+        if (!enabled)
+            return retention;
+        var horizon = compactionHorizon();
+        return Optional.of(retention.filter(horizon::isBefore).orElse(horizon));
+    }
+
+    @Scheduled(cron = "${stats-server.compaction.cron:0 15 * * * *}")
+    public void compact() {
+        if (!enabled)
+            return;
+
+        var horizon = compactionHorizon();
+        var total = 0L;
+        try {
+            while (true) {
+                var queued = hitBuffer.size() + hitGroupCommitter.pending();
+                var inFlight = hitAdmissionControl.inFlight();
+                if (queued > maxBufferDepth || inFlight > maxInFlight) {
+                    log.info("Hit compaction paused: {} hits queued, {} ingest requests in flight", queued, inFlight);
+                    break;
+                }
+                var compacted = hitCompactionRepository.compactBefore(horizon, batchSize);
+                total += compacted;
+                compactedCounter.increment(compacted);
+                if (compacted < batchSize)
+                    break;
+
+                Thread.sleep(pauseMs);
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("Hit compaction folded {} raw hits before {}", total, horizon);
+    }
+
+    private LocalDateTime compactionHorizon() {
+        return RollupGranularity.MINUTE.floor(LocalDateTime.now().minusDays(maxAgeDays));
+    }
+}
@@ -0,0 +1,236 @@
+package ru.practicum.stats.server.hit.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.practicum.stats.server.hit.model.Hit;
+import ru.practicum.stats.server.hit.model.HitKey;
+import ru.practicum.stats.server.hit.model.ViewStats;
+import ru.practicum.stats.server.hit.utils.UriPatterns;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.time.temporal.ChronoUnit.SECONDS;
+
+/**
+ * Per-second hit counters of the recent window, kept per (app, uri) in a ring of primitive
+ * buckets. Keys are spread over lock stripes, each an LRU map, and the number of keys is
+ * capped so that all rings together hold at most max-buckets buckets. A query is answered
+ * from memory only if it starts at or after the point from which the cache is known to hold
+ * every committed hit: the later of startup, the window start and the last second of any
+ * evicted entry or overwritten bucket. Hits more than a minute ahead of the clock are not
+ * cached, and queries reaching the earliest of them are not answered from memory.
+ */
+@Slf4j
+@Component
+public class HitCounterCache {
+
+    private static final int STRIPES = 16;
+    private static final long SKEW_SECONDS = 60;
+
+    private final boolean enabled;
+    private final long windowSeconds;
+    private final int ringSize;
+    private final List<Map<HitKey, Ring>> stripes = new ArrayList<>(STRIPES);
+    private final long startedAt;
+    private final AtomicLong evictedUpTo = new AtomicLong();
+    private final AtomicLong skippedFrom = new AtomicLong(Long.MAX_VALUE);
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter evictedCounter;
+
+    public HitCounterCache(MeterRegistry meterRegistry,
+                           @Value("${stats-server.hot-cache.enabled:true}") boolean enabled,
+                           @Value("${stats-server.hot-cache.window-minutes:60}") long windowMinutes,
+                           @Value("${stats-server.hot-cache.max-entries:10000}") int maxEntries,
+                           @Value("${stats-server.hot-cache.max-buckets:2097152}") long maxBuckets) {
+        this.enabled = enabled;
+        this.windowSeconds = windowMinutes * 60;
+        this.ringSize = (int) (windowSeconds + SKEW_SECONDS);
+        this.startedAt = toSecond(LocalDateTime.now()) + 1;
+
+        var maxKeys = (int) Math.min(maxEntries, maxBuckets / ringSize);
+        var stripeEntries = Math.max(1, maxKeys / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes.add(new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<HitKey, Ring> eldest) {
+                    if (size() <= stripeEntries)
+                        return false;
+                    evicted(eldest.getValue().newest + 1);
+                    return true;
+                }
+            });
+        }
+        if (enabled && maxKeys < maxEntries)
+            log.info("Hot cache holds at most {} keys of {} buckets each", stripeEntries * STRIPES, ringSize);
+
+        Gauge.builder("stats.hits.cache.size", this, HitCounterCache::size).register(meterRegistry);
+        hitCounter = meterRegistry.counter("stats.hits.cache.hit");
+        missCounter = meterRegistry.counter("stats.hits.cache.miss");
+        evictedCounter = meterRegistry.counter("stats.hits.cache.evicted");
+    }
+
+    public void addAfterCommit(List<Hit> hits) {
+        if (!enabled)
+            return;
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            add(hits);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                add(hits);
+            }
+        });
+    }
+
+    /**
+     * Non-unique counts for [start, end], or empty if the range is not fully covered by the cache.
+     */
+    public Optional<List<ViewStats>> getStats(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        if (!enabled)
+            return Optional.empty();
+
+        var from = toSecond(start);
+        if (from < coveredFrom()) {
+            missCounter.increment();
+            return Optional.empty();
+        }
+        var to = toSecond(end.truncatedTo(SECONDS));
+        if (to >= skippedFrom.get()) {
+            missCounter.increment();
+            return Optional.empty();
+        }
+        var uriFilter = uris == null ? null : UriPatterns.matcher(uris);
+        List<ViewStats> stats = new ArrayList<>();
+
+        for (Map<HitKey, Ring> stripe : stripes) {
+            synchronized (stripe) {
+                for (Map.Entry<HitKey, Ring> entry : stripe.entrySet()) {
+                    var key = entry.getKey();
+                    if (uriFilter != null && !uriFilter.test(key.getUri()))
+                        continue;
+
+                    var hits = entry.getValue().sum(from, to);
+                    if (hits > 0)
+                        stats.add(new ViewStats(key.getUri(), key.getApp(), hits));
+                }
+            }
+        }
+        if (from < coveredFrom()) {
+            missCounter.increment();
+            return Optional.empty();
+        }
+        hitCounter.increment();
+        stats.sort(Comparator.comparing(ViewStats::getHits).reversed());
+        return Optional.of(stats);
+    }
+
+    private void add(List<Hit> hits) {
+        var now = toSecond(LocalDateTime.now());
+        var oldest = now - windowSeconds;
+
+        for (Hit hit : hits) {
+            var second = toSecond(hit.getTimestamp());
+            if (second < oldest)
+                continue;
+            if (second > now + SKEW_SECONDS) {
+                skippedFrom.accumulateAndGet(second, Math::min);
+                continue;
+            }
+
+            var key = new HitKey(hit.getApp(), hit.getUri());
+            var stripe = stripes.get(Math.floorMod(key.hashCode(), STRIPES));
+            synchronized (stripe) {
+                var lost = stripe.computeIfAbsent(key, k -> new Ring(ringSize)).add(second);
+                if (lost >= oldest)
+                    evicted(lost + 1);
+            }
+        }
+    }
+
+    private void evicted(long upTo) {
+        evictedUpTo.accumulateAndGet(upTo, Math::max);
+        evictedCounter.increment();
+    }
+
+    private long coveredFrom() {
+        return Math.max(Math.max(startedAt, evictedUpTo.get()), toSecond(LocalDateTime.now()) - windowSeconds);
+    }
+
+    private int size() {
+        var size = 0;
+        for (Map<HitKey, Ring> stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    private static long toSecond(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    /**
+     * Hit counts of the last size distinct seconds, each slot stamped with the second it holds.
+     */
+    private static class Ring {
+
+        private final long[] seconds;
+        private final long[] counts;
+        private long newest = Long.MIN_VALUE;
+
+        Ring(int size) {
+            seconds = new long[size];
+            counts = new long[size];
+            Arrays.fill(seconds, Long.MIN_VALUE);
+        }
+
+        /**
+         * Counts a hit and returns the second whose count it overwrote, or Long.MIN_VALUE.
+         */
+        long add(long second) {
+            var slot = (int) Math.floorMod(second, (long) seconds.length);
+            var lost = Long.MIN_VALUE;
+            if (seconds[slot] > second)
+                return second;
+            if (seconds[slot] < second) {
+                if (counts[slot] > 0)
+                    lost = seconds[slot];
+                seconds[slot] = second;
+                counts[slot] = 0;
+            }
+            counts[slot]++;
+            newest = Math.max(newest, second);
+            return lost;
+        }
+
+        long sum(long from, long to) {
+            var hits = 0L;
+            if (to - from < seconds.length) {
+                for (long second = from; second <= to; second++) {
+                    var slot = (int) Math.floorMod(second, (long) seconds.length);
+                    if (seconds[slot] == second)
+                        hits += counts[slot];
+                }
+            } else {
+                for (int slot = 0; slot < seconds.length; slot++) {
+                    if (seconds[slot] >= from && seconds[slot] <= to)
+                        hits += counts[slot];
+                }
+            }
+            return hits;
+        }
+    }
+}
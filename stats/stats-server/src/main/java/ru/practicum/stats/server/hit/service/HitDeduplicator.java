@@ -0,0 +1,236 @@
+package ru.practicum.stats.server.hit.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.dto.HitDto;
+import ru.practicum.stats.server.hit.exception.HitInFlightException;
+import ru.practicum.stats.server.hit.utils.Hashes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Remembers 64-bit hashes of the client ids of recently accepted hits in two rotating
+ * generations, so a retried hit is dropped if it arrives within one to two windows of the
+ * first attempt. A generation that fills up half of max-entries is rotated early: memory
+ * stays bounded and the window shrinks under heavy load. Ids live in memory only and are
+ * forgotten on restart. Hits without an id are never deduplicated. Each generation is a
+ * preallocated open-addressing table of primitive longs, reused on rotation.
+ * <p>
+ * Ids of hits still being stored are also kept in flight until the outcome is known. A retry
+ * arriving meanwhile is rejected as retryable rather than reported as accepted, since the
+ * first attempt may yet fail.
+ */
+@Component
+public class HitDeduplicator {
+
+    private final boolean enabled;
+    private final long windowMs;
+    private final int generationSize;
+    private final Counter duplicateCounter;
+    private final Counter inFlightCounter;
+    private final IdSet inFlight = new IdSet(1024);
+    private IdSet current;
+    private IdSet previous;
+    private long rotatedAt = System.currentTimeMillis();
+
+    public HitDeduplicator(MeterRegistry meterRegistry,
+                           @Value("${stats-server.dedup.enabled:true}") boolean enabled,
+                           @Value("${stats-server.dedup.window-minutes:10}") long windowMinutes,
+                           @Value("${stats-server.dedup.max-entries:1000000}") int maxEntries) {
+        this.enabled = enabled;
+        this.windowMs = windowMinutes * 60_000;
+        this.generationSize = Math.max(maxEntries / 2, 1);
+        this.duplicateCounter = meterRegistry.counter("stats.hits.duplicates");
+        this.inFlightCounter = meterRegistry.counter("stats.hits.duplicates.in-flight");
+        this.current = new IdSet(enabled ? generationSize : 1);
+        this.previous = new IdSet(enabled ? generationSize : 1);
+    }
+
+    /**
+     * Returns the hits not seen before and remembers their ids as in flight. Once stored they
+     * must be passed to {@link #complete}, or to {@link #forget} if they fail to be stored, so
+     * that the client may retry. Throws HitInFlightException, accepting none of the hits, if
+     * any of them repeats a hit still in flight.
+     */
+    public synchronized List<HitDto> accept(List<HitDto> hitDtos) {
+        if (!enabled)
+            return hitDtos;
+
+        var keys = new long[hitDtos.size()];
+        for (int i = 0; i < keys.length; i++) {
+            var hitId = hitDtos.get(i).getHitId();
+            if (hitId == null)
+                continue;
+            keys[i] = key(hitId);
+            if (inFlight.contains(keys[i])) {
+                inFlightCounter.increment();
+                throw new HitInFlightException("hit " + hitId + " is still being stored");
+            }
+        }
+
+        List<HitDto> accepted = new ArrayList<>(hitDtos.size());
+        for (int i = 0; i < keys.length; i++) {
+            var hitDto = hitDtos.get(i);
+            if (hitDto.getHitId() == null) {
+                accepted.add(hitDto);
+                continue;
+            }
+            if (previous.contains(keys[i]) || !add(keys[i])) {
+                duplicateCounter.increment();
+                continue;
+            }
+            inFlight.add(keys[i]);
+            accepted.add(hitDto);
+        }
+        return accepted;
+    }
+
+    private boolean add(long key) {
+        var now = System.currentTimeMillis();
+        if (now - rotatedAt >= windowMs || current.size() >= generationSize) {
+            var recycled = previous;
+            recycled.clear();
+            previous = current;
+            current = recycled;
+            rotatedAt = now;
+        }
+        return current.add(key);
+    }
+
+    public synchronized void complete(List<HitDto> hitDtos) {
+        if (!enabled)
+            return;
+
+        for (HitDto hitDto : hitDtos) {
+            if (hitDto.getHitId() != null)
+                inFlight.remove(key(hitDto.getHitId()));
+        }
+    }
+
+    public synchronized void forget(List<HitDto> hitDtos) {
+        if (!enabled)
+            return;
+
+        for (HitDto hitDto : hitDtos) {
+            if (hitDto.getHitId() == null)
+                continue;
+            var key = key(hitDto.getHitId());
+            current.remove(key);
+            previous.remove(key);
+            inFlight.remove(key);
+        }
+    }
+
+    private static long key(String hitId) {
+        return Hashes.hash(hitId.getBytes(UTF_8));
+    }
+
+    /**
+     * Set of longs in a linear-probing table sized for capacity entries at half load, and
+     * doubled if more are added. Zero marks a free slot, so the key zero is kept in a flag
+     * of its own.
+     */
+    private static class IdSet {
+
+        private long[] slots;
+        private int mask;
+        private boolean containsZero;
+        private int size;
+
+        IdSet(int capacity) {
+            slots = new long[Integer.highestOneBit(Math.max(2 * capacity - 1, 1)) << 1];
+            mask = slots.length - 1;
+        }
+
+        int size() {
+            return size;
+        }
+
+        boolean contains(long key) {
+            if (key == 0)
+                return containsZero;
+            return slots[find(key)] == key;
+        }
+
+        boolean add(long key) {
+            if (key == 0) {
+                if (containsZero)
+                    return false;
+                containsZero = true;
+                size++;
+                return true;
+            }
+            var slot = find(key);
+            if (slots[slot] == key)
+                return false;
+            if (2 * (size + 1) > slots.length) {
+                grow();
+                slot = find(key);
+            }
+            slots[slot] = key;
+            size++;
+            return true;
+        }
+
+        private void grow() {
+            var old = slots;
+            slots = new long[old.length << 1];
+            mask = slots.length - 1;
+            for (long key : old) {
+                if (key != 0)
+                    slots[find(key)] = key;
+            }
+        }
+
+        /**
+         * Removes the key and shifts back the entries probed past it, so no tombstones are left.
+         */
+        void remove(long key) {
+            if (key == 0) {
+                if (containsZero)
+                    size--;
+                containsZero = false;
+                return;
+            }
+            var hole = find(key);
+            if (slots[hole] != key)
+                return;
+
+            var next = (hole + 1) & mask;
+            while (slots[next] != 0) {
+                var home = index(slots[next]);
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    slots[hole] = slots[next];
+                    hole = next;
+                }
+                next = (next + 1) & mask;
+            }
+            slots[hole] = 0;
+            size--;
+        }
+
+        void clear() {
+            Arrays.fill(slots, 0);
+            containsZero = false;
+            size = 0;
+        }
+
+        private int find(long key) {
+            var slot = index(key);
+            while (slots[slot] != 0 && slots[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private int index(long key) {
+            return (int) (key ^ (key >>> 32)) & mask;
+        }
+    }
+}
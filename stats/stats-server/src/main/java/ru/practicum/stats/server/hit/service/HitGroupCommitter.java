@@ -0,0 +1,182 @@
+package ru.practicum.stats.server.hit.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.server.hit.exception.HitBufferOverflowException;
+import ru.practicum.stats.server.hit.model.Hit;
+import ru.practicum.stats.server.hit.repository.HitBitmapRepository;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Opt-in group commit: requests queue their hits and get a future that completes once
+ * the batch holding them is committed, so a request holds neither a servlet thread nor
+ * a connection while it waits. A writer takes whatever has queued up since its last
+ * commit, so batches grow with load without delaying hits when idle. At most capacity
+ * hits may be pending, beyond that requests are rejected with 429, and the number of
+ * writers caps the connections ingest can take. When a group fails, its requests are
+ * committed one by one, so only the ones that fail on their own get an error.
+ * <p>
+ * Exact unique bitmaps turn group commit on unless the write-behind buffer batches hits
+ * instead, so that each hourly bitmap is rewritten once per batch rather than per request.
+ */
+@Slf4j
+@Component
+public class HitGroupCommitter {
+
+    private final HitWriter hitWriter;
+    private final boolean enabled;
+    private final int capacity;
+    private final int batchSize;
+    private final int writers;
+    private final Semaphore permits;
+    private final BlockingQueue<PendingHits> queue = new LinkedBlockingQueue<>();
+    private final Timer commitTimer;
+    private final DistributionSummary batchSummary;
+    private final Counter rejectedCounter;
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile boolean running;
+
+    public HitGroupCommitter(HitWriter hitWriter,
+                             MeterRegistry meterRegistry,
+                             HitBitmapRepository hitBitmapRepository,
+                             @Value("${stats-server.hits.group-commit.enabled:false}") boolean enabled,
+                             @Value("${stats-server.hits.write-behind.enabled:false}") boolean writeBehindEnabled,
+                             @Value("${stats-server.hits.group-commit.capacity:50000}") int capacity,
+                             @Value("${stats-server.hits.group-commit.batch-size:1000}") int batchSize,
+                             @Value("${stats-server.hits.group-commit.writers:2}") int writers) {
+        this.hitWriter = hitWriter;
+        this.enabled = enabled || hitBitmapRepository.isEnabled() && !writeBehindEnabled;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.writers = writers;
+        this.permits = new Semaphore(capacity);
+
+        commitTimer = meterRegistry.timer("stats.hits.group-commit.commit");
+        batchSummary = meterRegistry.summary("stats.hits.group-commit.batch-size");
+        rejectedCounter = meterRegistry.counter("stats.hits.group-commit.rejected");
+        meterRegistry.gauge("stats.hits.group-commit.pending", permits, p -> capacity - p.availablePermits());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Hits submitted but not committed yet.
+     */
+    public int pending() {
+        return capacity - permits.availablePermits();
+    }
+
+    public CompletableFuture<Integer> submit(List<Hit> hits) {
+        if (!running || !permits.tryAcquire(Math.min(hits.size(), capacity))) {
+            rejectedCounter.increment(hits.size());
+            throw new HitBufferOverflowException("hit ingest queue is full");
+        }
+        var pending = new PendingHits(hits, new CompletableFuture<>());
+        queue.add(pending);
+        return pending.future;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled)
+            return;
+
+        running = true;
+        for (int i = 0; i < writers; i++) {
+            var thread = new Thread(this::drain, "hit-group-commit-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+        log.info("Hit group commit started with {} writers", writers);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    private void drain() {
+        while (running || !queue.isEmpty()) {
+            try {
+                var first = queue.poll(100, MILLISECONDS);
+                if (first == null)
+                    continue;
+
+                List<PendingHits> group = new ArrayList<>();
+                group.add(first);
+                var size = first.hits.size();
+                while (size < batchSize) {
+                    var next = queue.poll();
+                    if (next == null)
+                        break;
+                    group.add(next);
+                    size += next.hits.size();
+                }
+                commit(group, size);
+            } catch (InterruptedException exception) {
+                running = false;
+            }
+        }
+    }
+
+    private void commit(List<PendingHits> group, int size) {
+        List<Hit> hits = new ArrayList<>(size);
+        group.forEach(pending -> hits.addAll(pending.hits));
+        try {
+            commitTimer.record(() -> hitWriter.write(hits));
+            batchSummary.record(size);
+            group.forEach(pending -> pending.future.complete(pending.hits.size()));
+        } catch (RuntimeException exception) {
+            if (group.size() == 1) {
+                log.error("Failed to commit {} hits", size, exception);
+                group.get(0).future.completeExceptionally(exception);
+            } else {
+                log.warn("Failed to commit a group of {} hits, committing its {} requests one by one",
+                        size, group.size(), exception);
+                group.forEach(this::commitAlone);
+            }
+        } finally {
+            group.forEach(pending -> permits.release(Math.min(pending.hits.size(), capacity)));
+        }
+    }
+
+    private void commitAlone(PendingHits pending) {
+        try {
+            commitTimer.record(() -> hitWriter.write(pending.hits));
+            batchSummary.record(pending.hits.size());
+            pending.future.complete(pending.hits.size());
+        } catch (RuntimeException exception) {
+            log.error("Failed to commit {} hits", pending.hits.size(), exception);
+            pending.future.completeExceptionally(exception);
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class PendingHits {
+
+        private final List<Hit> hits;
+        private final CompletableFuture<Integer> future;
+    }
+}
@@ -0,0 +1,108 @@
+package ru.practicum.stats.server.hit.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.server.hit.enums.RetentionAction;
+import ru.practicum.stats.server.hit.repository.DatabaseDialect;
+import ru.practicum.stats.server.hit.repository.HitPartitionRepository;
+import ru.practicum.stats.server.hit.repository.HitRollupRepository;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Creates daily hits partitions ahead of time and detaches or drops those past retention.
+ * Today's and tomorrow's partitions are created at startup, before the server takes hits,
+ * and startup fails if they cannot be. Only runs against Postgres; the H2 profile keeps a
+ * plain table. Expired hits are folded
+ * into the per-second counts of compaction and the retention day becomes a compaction
+ * horizon, so retention needs rollups and is off without them.
+ */
+@Slf4j
+@Component
+public class HitPartitionManager {
+
+    private final HitPartitionRepository hitPartitionRepository;
+    private final boolean enabled;
+    private final int daysAhead;
+    private final int retentionDays;
+    private final RetentionAction retentionAction;
+
+    public HitPartitionManager(HitPartitionRepository hitPartitionRepository,
+                               HitRollupRepository hitRollupRepository,
+                               DataSource dataSource,
+                               @Value("${stats-server.partitions.enabled:true}") boolean enabled,
+                               @Value("${stats-server.repository.engine:jdbc}") String engine,
+                               @Value("${stats-server.partitions.days-ahead:7}") int daysAhead,
+                               @Value("${stats-server.partitions.retention-days:0}") int retentionDays,
+                               @Value("${stats-server.partitions.retention-action:DETACH}")
+                               RetentionAction retentionAction) {
+        this.hitPartitionRepository = hitPartitionRepository;
+        this.enabled = enabled && "jdbc".equals(engine)
+                && DatabaseDialect.of(dataSource) == DatabaseDialect.POSTGRESQL;
+        this.daysAhead = daysAhead;
+        this.retentionDays = retentionDays > 0 && hitRollupRepository.isEnabled() ? retentionDays : 0;
+        this.retentionAction = retentionAction;
+
+        if (this.enabled && retentionDays > 0 && this.retentionDays == 0)
+            log.warn("Hits partition retention needs rollups and stays disabled");
+    }
+
+    /**
+     * Start of the range still backed by raw hits, if partitions expire.
+     */
+    public Optional<LocalDateTime> getRetentionHorizon() {
+        if (!enabled || retentionDays == 0)
+            return Optional.empty();
+        return Optional.of(LocalDate.now().minusDays(retentionDays).atStartOfDay());
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled)
+            return;
+
+        var today = LocalDate.now();
+        hitPartitionRepository.createPartition(today);
+        hitPartitionRepository.createPartition(today.plusDays(1));
+        log.info("Hits partitions ready from {}", today);
+        maintain();
+    }
+
+    @Scheduled(cron = "${stats-server.partitions.cron:0 5 * * * *}")
+    public void maintain() {
+        if (!enabled)
+            return;
+
+        var today = LocalDate.now();
+        for (int i = 0; i <= daysAhead; i++) {
+            create(today.plusDays(i));
+        }
+        if (retentionDays > 0)
+            expire(today.minusDays(retentionDays));
+    }
+
+    private void create(LocalDate day) {
+        try {
+            hitPartitionRepository.createPartition(day);
+        } catch (DataAccessException exception) {
+            log.warn("Unable to create hits partition for {}", day, exception);
+        }
+    }
+
+    private void expire(LocalDate oldestKept) {
+        for (String partition : hitPartitionRepository.findPartitions()) {
+            if (!HitPartitionRepository.day(partition).isBefore(oldestKept))
+                continue;
+
+            hitPartitionRepository.expirePartition(partition, retentionAction == RetentionAction.DROP);
+            log.info("Hits partition {} expired: {}", partition, retentionAction);
+        }
+    }
+}
@@ -1,17 +1,43 @@
 package ru.practicum.stats.server.hit.service;
 
+import ru.practicum.stats.dto.AcceptedHitsDto;
+import ru.practicum.stats.dto.HistogramDto;
 import ru.practicum.stats.dto.HitDto;
+import ru.practicum.stats.dto.StatsQueryDto;
 import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.dto.WindowStatsDto;
+import ru.practicum.stats.server.hit.enums.RollupGranularity;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 public interface HitService {
 
-    void saveHit(HitDto hitDto);
+    CompletableFuture<Void> saveHit(HitDto hitDto);
+
+    CompletableFuture<AcceptedHitsDto> saveHits(List<HitDto> hitDtos);
 
     List<ViewStatsDto> getHits(LocalDateTime start,
                                LocalDateTime end,
                                List<String> uris,
-                               boolean unique);
+                               boolean unique,
+                               boolean exact);
+
+    void streamHits(LocalDateTime start,
+                    LocalDateTime end,
+                    List<String> uris,
+                    boolean unique,
+                    Consumer<ViewStatsDto> consumer);
+
+    List<ViewStatsDto> getTopHits(LocalDateTime start, LocalDateTime end, int limit);
+
+    List<HistogramDto> getHistogram(LocalDateTime start,
+                                    LocalDateTime end,
+                                    List<String> uris,
+                                    boolean unique,
+                                    RollupGranularity granularity);
+
+    List<WindowStatsDto> queryHits(StatsQueryDto query);
 }
@@ -2,47 +2,336 @@ package ru.practicum.stats.server.hit.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.stats.dto.AcceptedHitsDto;
+import ru.practicum.stats.dto.HistogramDto;
+import ru.practicum.stats.dto.HistogramPointDto;
 import ru.practicum.stats.dto.HitDto;
+import ru.practicum.stats.dto.StatsQueryDto;
 import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.dto.WindowStatsDto;
+import ru.practicum.stats.server.hit.enums.RollupGranularity;
 import ru.practicum.stats.server.hit.exception.BadParamException;
 import ru.practicum.stats.server.hit.mapper.HitMapper;
 import ru.practicum.stats.server.hit.mapper.ViewStatsMapper;
-import ru.practicum.stats.server.hit.repository.StatsRepository;
+import ru.practicum.stats.server.hit.model.HistogramStats;
+import ru.practicum.stats.server.hit.model.HitKey;
+import ru.practicum.stats.server.hit.model.RangePlan;
+import ru.practicum.stats.server.hit.model.TimeRange;
+import ru.practicum.stats.server.hit.model.ViewStats;
+import ru.practicum.stats.server.hit.repository.HitBitmapRepository;
+import ru.practicum.stats.server.hit.repository.HitRepository;
+import ru.practicum.stats.server.hit.repository.HitRollupRepository;
+import ru.practicum.stats.server.hit.repository.HitSketchRepository;
+import ru.practicum.stats.server.hit.utils.IpAddresses;
+import ru.practicum.stats.server.hit.utils.RangePlanner;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 import static java.util.stream.Collectors.toList;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
-@Transactional(readOnly = true)
 public class HitServiceImpl implements HitService {
 
-    private final StatsRepository statsRepository;
+    private final HitRepository hitRepository;
+    private final HitRollupRepository hitRollupRepository;
+    private final HitSketchRepository hitSketchRepository;
+    private final HitBitmapRepository hitBitmapRepository;
+    private final HitWriter hitWriter;
     private final HitMapper hitMapper;
     private final ViewStatsMapper viewStatsMapper;
+    private final HitWriteBehindBuffer hitBuffer;
+    private final HitCounterCache hitCounterCache;
+    private final TopHitsTracker topHitsTracker;
+    private final HitCompactor hitCompactor;
+    private final HitDeduplicator hitDeduplicator;
+    private final HitGroupCommitter hitGroupCommitter;
+
+    @Value("${stats-server.hits.max-batch-size:10000}")
+    private int maxBatchSize;
+
+    @Value("${stats-server.stats.max-windows:10}")
+    private int maxWindows;
+
+    @Value("${stats-server.stats.max-buckets:10000}")
+    private int maxBuckets;
+
+    @Override
+    public CompletableFuture<Void> saveHit(HitDto hitDto) {
+        return write(List.of(hitDto)).thenAccept(accepted -> {
+            if (accepted == 0)
+                log.debug("Duplicate hit {} ignored", hitDto.getHitId());
+        });
+    }
 
     @Override
-    @Transactional
-    public void saveHit(HitDto hitDto) {
-        statsRepository.save(hitMapper.toEntity(hitDto));
+    public CompletableFuture<AcceptedHitsDto> saveHits(List<HitDto> hitDtos) {
+        if (hitDtos.size() > maxBatchSize) {
+            throw new BadParamException("batch size must not exceed " + maxBatchSize);
+        }
+        return write(hitDtos).thenApply(accepted -> {
+            log.debug("Accepted {} hits", accepted);
+            return AcceptedHitsDto.builder()
+                    .accepted(accepted)
+                    .build();
+        });
     }
 
     @Override
     public List<ViewStatsDto> getHits(LocalDateTime start,
                                       LocalDateTime end,
                                       List<String> uris,
-                                      boolean unique) {
-        if (start == null || end == null || end.isBefore(start)) {
-            throw new BadParamException("wrong start or end time");
+                                      boolean unique,
+                                      boolean exact) {
+        checkRange(start, end);
+        return getStats(start, end, uris, unique, exact).stream()
+                .map(viewStatsMapper::toDto)
+                .collect(toList());
+    }
+
+    /**
+     * Unique counts are streamed from the exact path: merging sketches needs every
+     * (app, uri) in memory at once, which is what streaming is meant to avoid.
+     */
+    @Override
+    public void streamHits(LocalDateTime start,
+                           LocalDateTime end,
+                           List<String> uris,
+                           boolean unique,
+                           Consumer<ViewStatsDto> consumer) {
+        checkRange(start, end);
+        Consumer<ViewStats> sink = viewStats -> consumer.accept(viewStatsMapper.toDto(viewStats));
+
+        if (!unique && hitRollupRepository.isEnabled()) {
+            hitRollupRepository.streamStats(plan(start, end), uris, sink);
+        } else {
+            checkRawRange(start);
+            hitRepository.streamStats(start, end, uris, unique, sink);
+        }
+    }
+
+    /**
+     * Recent windows are answered from the heavy-hitters summaries with estimated counts,
+     * older ones by an exact ORDER BY ... LIMIT query.
+     */
+    @Override
+    public List<ViewStatsDto> getTopHits(LocalDateTime start, LocalDateTime end, int limit) {
+        checkRange(start, end);
+        if (limit < 1 || limit > topHitsTracker.getCapacity()) {
+            throw new BadParamException("limit must be between 1 and " + topHitsTracker.getCapacity());
+        }
+        var top = topHitsTracker.getTop(start, end, limit);
+        List<ViewStats> stats;
+        if (top.isPresent())
+            stats = top.get();
+        else if (hitRollupRepository.isEnabled())
+            stats = hitRollupRepository.getTopStats(plan(start, end), limit);
+        else {
+            checkRawRange(start);
+            stats = hitRepository.getTopStats(start, end, limit);
         }
-        return statsRepository.getStats(start, end, uris, unique)
-                .stream()
+
+        return stats.stream()
                 .map(viewStatsMapper::toDto)
                 .collect(toList());
     }
+
+    @Override
+    public List<HistogramDto> getHistogram(LocalDateTime start,
+                                           LocalDateTime end,
+                                           List<String> uris,
+                                           boolean unique,
+                                           RollupGranularity granularity) {
+        checkRange(start, end);
+        var buckets = granularity.getUnit().between(granularity.floor(start), end) + 1;
+        if (buckets > maxBuckets) {
+            throw new BadParamException("number of buckets must not exceed " + maxBuckets);
+        }
+        List<HistogramStats> stats;
+        if (!unique && hitRollupRepository.isEnabled()) {
+            stats = hitRollupRepository.getHistogram(start, RangePlanner.exclusiveEnd(end), granularity, uris);
+        } else {
+            checkRawRange(start);
+            stats = hitRepository.getHistogram(start, end, uris, unique, granularity);
+        }
+
+        Map<HitKey, List<HistogramPointDto>> series = new LinkedHashMap<>();
+        for (HistogramStats point : stats) {
+            series.computeIfAbsent(new HitKey(point.getApp(), point.getUri()), key -> new ArrayList<>())
+                    .add(HistogramPointDto.builder()
+                            .bucket(point.getBucket())
+                            .hits(point.getHits())
+                            .build());
+        }
+        return series.entrySet().stream()
+                .map(entry -> HistogramDto.builder()
+                        .app(entry.getKey().getApp())
+                        .uri(entry.getKey().getUri())
+                        .points(entry.getValue())
+                        .build())
+                .collect(toList());
+    }
+
+    @Override
+    public List<WindowStatsDto> queryHits(StatsQueryDto query) {
+        var windows = query.getWindows();
+        if (windows.size() > maxWindows) {
+            throw new BadParamException("number of windows must not exceed " + maxWindows);
+        }
+        windows.forEach(window -> checkRange(window.getStart(), window.getEnd()));
+        var unique = Boolean.TRUE.equals(query.getUnique());
+
+        var perWindow = windows.size() == 1 || usesAggregates(unique)
+                || windows.stream().anyMatch(window -> isCompacted(window.getStart()));
+
+        List<List<ViewStats>> stats;
+        if (perWindow) {
+            stats = windows.stream()
+                    .map(window -> getStats(window.getStart(), window.getEnd(), query.getUris(), unique, false))
+                    .collect(toList());
+        } else {
+            var ranges = windows.stream()
+                    .map(window -> new TimeRange(window.getStart(), RangePlanner.exclusiveEnd(window.getEnd())))
+                    .collect(toList());
+            stats = hitRepository.getWindowStats(ranges, query.getUris(), unique);
+        }
+
+        List<WindowStatsDto> result = new ArrayList<>(windows.size());
+        for (int i = 0; i < windows.size(); i++) {
+            result.add(WindowStatsDto.builder()
+                    .start(windows.get(i).getStart())
+                    .end(windows.get(i).getEnd())
+                    .stats(stats.get(i).stream()
+                            .map(viewStatsMapper::toDto)
+                            .collect(toList()))
+                    .build());
+        }
+        return result;
+    }
+
+    /**
+     * Stores new hits through the write-behind buffer, the group committer or directly,
+     * and completes once they are queued or committed respectively.
+     */
+    private CompletableFuture<Integer> write(List<HitDto> hitDtos) {
+        hitDtos.forEach(hitDto -> IpAddresses.validate(hitDto.getIp()));
+        var accepted = hitDeduplicator.accept(hitDtos);
+        if (accepted.isEmpty())
+            return CompletableFuture.completedFuture(0);
+
+        var hits = hitMapper.toEntities(accepted);
+        CompletableFuture<Integer> written;
+        try {
+            if (hitBuffer.isEnabled()) {
+                var queued = hitBuffer.add(hits);
+                hitDeduplicator.complete(accepted.subList(0, queued));
+                if (queued < accepted.size())
+                    hitDeduplicator.forget(accepted.subList(queued, accepted.size()));
+                written = CompletableFuture.completedFuture(queued);
+            } else if (hitGroupCommitter.isEnabled())
+                written = hitGroupCommitter.submit(hits);
+            else
+                written = CompletableFuture.completedFuture(hitWriter.write(hits));
+        } catch (RuntimeException exception) {
+            hitDeduplicator.forget(accepted);
+            throw exception;
+        }
+        return written.whenComplete((count, exception) -> {
+            if (exception != null)
+                hitDeduplicator.forget(accepted);
+            else
+                hitDeduplicator.complete(accepted);
+        });
+    }
+
+    private void checkRange(LocalDateTime start, LocalDateTime end) {
+        if (start == null || end == null || end.isBefore(start)) {
+            throw new BadParamException("wrong start or end time");
+        }
+    }
+
+    private List<ViewStats> getStats(LocalDateTime start,
+                                     LocalDateTime end,
+                                     List<String> uris,
+                                     boolean unique,
+                                     boolean exact) {
+        if (!unique) {
+            var cached = hitCounterCache.getStats(start, end, uris);
+            if (cached.isPresent())
+                return cached.get();
+        }
+        if (!unique && hitRollupRepository.isEnabled())
+            return hitRollupRepository.getStats(plan(start, end), uris);
+        if (unique && !exact && hitSketchRepository.isEnabled())
+            return hitSketchRepository.getUniqueStats(sketchPlan(start, end), uris);
+        if (unique && hitBitmapRepository.isEnabled()) {
+            var endExclusive = RangePlanner.exclusiveEnd(end);
+            checkBitmapRange(start, endExclusive);
+            return hitBitmapRepository.getUniqueStats(start, endExclusive, uris);
+        }
+        checkRawRange(start);
+        return hitRepository.getStats(start, end, uris, unique);
+    }
+
+    /**
+     * Whether getStats answers from rollups, sketches or bitmaps rather than raw hits;
+     * only raw windows are worth counting together in one scan.
+     */
+    private boolean usesAggregates(boolean unique) {
+        if (!unique)
+            return hitRollupRepository.isEnabled();
+        return hitSketchRepository.isEnabled() || hitBitmapRepository.isEnabled();
+    }
+
+    private RangePlan plan(LocalDateTime start, LocalDateTime end) {
+        return RangePlanner.plan(start, RangePlanner.exclusiveEnd(end));
+    }
+
+    /**
+     * Plan for the unique estimates. Edges below the compaction horizon are widened to
+     * whole minutes, since the IPs of the raw hits the planner would read there are gone.
+     */
+    private RangePlan sketchPlan(LocalDateTime start, LocalDateTime end) {
+        var endExclusive = RangePlanner.exclusiveEnd(end);
+        if (isCompacted(start))
+            start = RollupGranularity.MINUTE.floor(start);
+        if (isCompacted(endExclusive))
+            endExclusive = RollupGranularity.MINUTE.ceil(endExclusive);
+        return RangePlanner.plan(start, endExclusive);
+    }
+
+    private boolean isCompacted(LocalDateTime time) {
+        return hitCompactor.getHorizon()
+                .map(time::isBefore)
+                .orElse(false);
+    }
+
+    /**
+     * Bitmaps cover whole hours, the rest of the range is read from raw hits.
+     */
+    private void checkBitmapRange(LocalDateTime start, LocalDateTime endExclusive) {
+        var fullStart = RollupGranularity.HOUR.ceil(start);
+        var fullEnd = RollupGranularity.HOUR.floor(endExclusive);
+        if (!fullStart.isBefore(fullEnd) || start.isBefore(fullStart))
+            checkRawRange(start);
+        else if (fullEnd.isBefore(endExclusive))
+            checkRawRange(fullEnd);
+    }
+
+    private void checkRawRange(LocalDateTime start) {
+        var horizon = hitCompactor.getHorizon();
+        if (horizon.isPresent() && start.isBefore(horizon.get())) {
+            throw new BadParamException("raw hits are only kept since " + horizon.get()
+                    + " and this range needs them");
+        }
+    }
 }
@@ -0,0 +1,224 @@
+package ru.practicum.stats.server.hit.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.server.hit.enums.OverflowPolicy;
+import ru.practicum.stats.server.hit.exception.HitBufferOverflowException;
+import ru.practicum.stats.server.hit.model.Hit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Opt-in write-behind mode: hits are acknowledged once queued and persisted
+ * by a single background writer in size- or time-triggered batches. Room for a
+ * whole request is reserved up front, so a request is never half queued. A request
+ * larger than capacity takes the whole buffer, like the group committer, and is written
+ * directly once it is empty; so is any request arriving while the buffer is stopped.
+ */
+@Slf4j
+@Component
+public class HitWriteBehindBuffer {
+
+    private final HitWriter hitWriter;
+    private final boolean enabled;
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final long blockTimeoutMs;
+    private final OverflowPolicy overflowPolicy;
+    private final BlockingQueue<Hit> queue;
+    private final Semaphore permits;
+    private final Timer flushTimer;
+    private final Counter droppedCounter;
+    private final Counter rejectedCounter;
+    private final Counter failedCounter;
+    private volatile boolean running;
+    private Thread writer;
+
+    public HitWriteBehindBuffer(HitWriter hitWriter,
+                                MeterRegistry meterRegistry,
+                                @Value("${stats-server.hits.write-behind.enabled:false}") boolean enabled,
+                                @Value("${stats-server.hits.write-behind.capacity:10000}") int capacity,
+                                @Value("${stats-server.hits.write-behind.batch-size:500}") int batchSize,
+                                @Value("${stats-server.hits.write-behind.flush-interval-ms:200}") long flushIntervalMs,
+                                @Value("${stats-server.hits.write-behind.block-timeout-ms:100}") long blockTimeoutMs,
+                                @Value("${stats-server.hits.write-behind.overflow-policy:REJECT}")
+                                OverflowPolicy overflowPolicy) {
+        this.hitWriter = hitWriter;
+        this.enabled = enabled;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.blockTimeoutMs = blockTimeoutMs;
+        this.overflowPolicy = overflowPolicy;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.permits = new Semaphore(capacity);
+
+        Gauge.builder("stats.hits.buffer.size", queue, BlockingQueue::size).register(meterRegistry);
+        flushTimer = meterRegistry.timer("stats.hits.buffer.flush");
+        droppedCounter = meterRegistry.counter("stats.hits.buffer.dropped");
+        rejectedCounter = meterRegistry.counter("stats.hits.buffer.rejected");
+        failedCounter = meterRegistry.counter("stats.hits.buffer.failed");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    /**
+     * Queues the hits and returns how many were queued or written: all of them, or under DROP
+     * the first ones that fit. Under REJECT and BLOCK nothing is queued if the batch does not fit.
+     */
+    public int add(List<Hit> hits) {
+        if (!running)
+            return hitWriter.write(hits);
+        if (hits.size() > capacity && overflowPolicy != OverflowPolicy.DROP) {
+            reserve(capacity);
+            try {
+                return hitWriter.write(hits);
+            } finally {
+                permits.release(capacity);
+            }
+        }
+
+        var accepted = reserve(hits.size());
+        synchronized (this) {
+            if (running) {
+                for (int i = 0; i < accepted; i++) {
+                    queue.add(hits.get(i));
+                }
+                return accepted;
+            }
+        }
+        permits.release(accepted);
+        return hitWriter.write(hits);
+    }
+
+    private int reserve(int count) {
+        switch (overflowPolicy) {
+            case BLOCK:
+                try {
+                    if (permits.tryAcquire(count, blockTimeoutMs, MILLISECONDS))
+                        return count;
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                }
+                rejectedCounter.increment(count);
+                throw new HitBufferOverflowException("hit buffer is full");
+            case DROP:
+                while (true) {
+                    var available = Math.min(count, permits.availablePermits());
+                    if (available == 0 || permits.tryAcquire(available)) {
+                        droppedCounter.increment(count - available);
+                        return available;
+                    }
+                }
+            default:
+                if (permits.tryAcquire(count))
+                    return count;
+                rejectedCounter.increment(count);
+                throw new HitBufferOverflowException("hit buffer is full");
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled)
+            return;
+
+        running = true;
+        writer = new Thread(this::drain, "hit-write-behind");
+        writer.setDaemon(true);
+        writer.start();
+        log.info("Hit write-behind buffer started, policy {}", overflowPolicy);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (writer == null)
+            return;
+
+        synchronized (this) {
+            running = false;
+        }
+        writer.join();
+        log.info("Hit write-behind buffer stopped");
+    }
+
+    private void drain() {
+        while (running || !queue.isEmpty()) {
+            try {
+                var first = queue.poll(flushIntervalMs, MILLISECONDS);
+                if (first == null)
+                    continue;
+
+                List<Hit> batch = new ArrayList<>(batchSize);
+                batch.add(first);
+                try {
+                    collect(batch);
+                } finally {
+                    permits.release(batch.size());
+                }
+                flush(batch);
+            } catch (InterruptedException exception) {
+                running = false;
+            }
+        }
+    }
+
+    private void collect(List<Hit> batch) throws InterruptedException {
+        var deadline = System.nanoTime() + MILLISECONDS.toNanos(flushIntervalMs);
+
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            var remaining = deadline - System.nanoTime();
+            if (batch.size() >= batchSize || remaining <= 0 || !running)
+                return;
+
+            var next = queue.poll(remaining, NANOSECONDS);
+            if (next == null)
+                return;
+            batch.add(next);
+        }
+    }
+
+    /**
+     * Writes the batch, and if that fails writes its hits one by one, so a single bad hit
+     * only loses itself.
+     */
+    private void flush(List<Hit> batch) {
+        try {
+            flushTimer.record(() -> hitWriter.write(batch));
+            return;
+        } catch (RuntimeException exception) {
+            log.warn("Failed to flush {} buffered hits, retrying one by one: {}", batch.size(),
+                    exception.getMessage());
+        }
+        for (Hit hit : batch) {
+            try {
+                hitWriter.write(List.of(hit));
+            } catch (RuntimeException exception) {
+                failedCounter.increment();
+                log.error("Failed to write buffered hit {} {}", hit.getApp(), hit.getUri(), exception);
+            }
+        }
+    }
+}
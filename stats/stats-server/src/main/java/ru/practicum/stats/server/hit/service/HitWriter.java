@@ -0,0 +1,69 @@
+package ru.practicum.stats.server.hit.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.stats.server.hit.model.Hit;
+import ru.practicum.stats.server.hit.repository.HitBitmapRepository;
+import ru.practicum.stats.server.hit.repository.HitRepository;
+import ru.practicum.stats.server.hit.repository.HitRollupRepository;
+import ru.practicum.stats.server.hit.repository.HitSketchRepository;
+
+import java.util.List;
+
+/**
+ * Stores hits with their rollups, sketches and bitmaps in one database transaction.
+ * The segment engine writes no database tables and runs without one.
+ */
+@Component
+public class HitWriter {
+
+    private final HitRepository hitRepository;
+    private final HitRollupRepository hitRollupRepository;
+    private final HitSketchRepository hitSketchRepository;
+    private final HitBitmapRepository hitBitmapRepository;
+    private final HitCounterCache hitCounterCache;
+    private final TopHitsTracker topHitsTracker;
+    private final TransactionTemplate transactionTemplate;
+
+    public HitWriter(HitRepository hitRepository,
+                     HitRollupRepository hitRollupRepository,
+                     HitSketchRepository hitSketchRepository,
+                     HitBitmapRepository hitBitmapRepository,
+                     HitCounterCache hitCounterCache,
+                     TopHitsTracker topHitsTracker,
+                     PlatformTransactionManager transactionManager,
+                     @Value("${stats-server.repository.engine:jdbc}") String engine) {
+        this.hitRepository = hitRepository;
+        this.hitRollupRepository = hitRollupRepository;
+        this.hitSketchRepository = hitSketchRepository;
+        this.hitBitmapRepository = hitBitmapRepository;
+        this.hitCounterCache = hitCounterCache;
+        this.topHitsTracker = topHitsTracker;
+        this.transactionTemplate = "jdbc".equals(engine) ? new TransactionTemplate(transactionManager) : null;
+    }
+
+    public int write(List<Hit> hits) {
+        if (hits.isEmpty())
+            return 0;
+        if (transactionTemplate == null)
+            return store(hits);
+
+        Integer saved = transactionTemplate.execute(status -> store(hits));
+        return saved == null ? 0 : saved;
+    }
+
+    private int store(List<Hit> hits) {
+        var saved = hitRepository.saveHits(hits);
+        if (hitRollupRepository.isEnabled())
+            hitRollupRepository.addHits(hits);
+        if (hitSketchRepository.isEnabled())
+            hitSketchRepository.addHits(hits);
+        if (hitBitmapRepository.isEnabled())
+            hitBitmapRepository.addHits(hits);
+        hitCounterCache.addAfterCommit(hits);
+        topHitsTracker.addAfterCommit(hits);
+        return saved;
+    }
+}
@@ -0,0 +1,107 @@
+package ru.practicum.stats.server.hit.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.practicum.stats.server.hit.model.Hit;
+import ru.practicum.stats.server.hit.model.HitKey;
+import ru.practicum.stats.server.hit.model.ViewStats;
+import ru.practicum.stats.server.hit.sketch.SpaceSaving;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Space-Saving summaries of (app, uri) hit counts, one per minute of the recent window.
+ * A top-N query over whole covered minutes merges the overlapping summaries; a summary
+ * that does not track a key adds its smallest count, the most the key can have had in that
+ * minute, so the counts are upper bounds and include hits of the partial minutes at both edges.
+ */
+@Component
+public class TopHitsTracker {
+
+    private final boolean enabled;
+    private final long windowMinutes;
+    private final int capacity;
+    private final long startedAt;
+    private final TreeMap<Long, SpaceSaving<HitKey>> minutes = new TreeMap<>();
+
+    public TopHitsTracker(@Value("${stats-server.top.enabled:true}") boolean enabled,
+                          @Value("${stats-server.top.window-minutes:60}") long windowMinutes,
+                          @Value("${stats-server.top.capacity:1000}") int capacity) {
+        this.enabled = enabled;
+        this.windowMinutes = windowMinutes;
+        this.capacity = capacity;
+        this.startedAt = toMinute(LocalDateTime.now()) + 1;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void addAfterCommit(List<Hit> hits) {
+        if (!enabled)
+            return;
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            add(hits);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                add(hits);
+            }
+        });
+    }
+
+    /**
+     * Top hits for [start, end], or empty if the summaries do not cover the range.
+     */
+    public synchronized Optional<List<ViewStats>> getTop(LocalDateTime start, LocalDateTime end, int limit) {
+        if (!enabled || toMinute(start) < coveredFrom())
+            return Optional.empty();
+
+        Map<HitKey, Long> counts = new HashMap<>();
+        var floor = 0L;
+        for (SpaceSaving<HitKey> summary : minutes.subMap(toMinute(start), true, toMinute(end), true).values()) {
+            var bound = summary.untrackedBound();
+            summary.addCountsAbove(counts, bound);
+            floor += bound;
+        }
+        var untracked = floor;
+
+        return Optional.of(counts.entrySet().stream()
+                .sorted(Map.Entry.<HitKey, Long>comparingByValue().reversed())
+                .limit(limit)
+                .map(entry -> new ViewStats(entry.getKey().getUri(), entry.getKey().getApp(),
+                        entry.getValue() + untracked))
+                .collect(toList()));
+    }
+
+    private synchronized void add(List<Hit> hits) {
+        var now = toMinute(LocalDateTime.now());
+        var oldest = now - windowMinutes + 1;
+
+        for (Hit hit : hits) {
+            var minute = toMinute(hit.getTimestamp());
+            if (minute < oldest || minute > now + 1)
+                continue;
+
+            minutes.computeIfAbsent(minute, key -> new SpaceSaving<>(capacity))
+                    .add(new HitKey(hit.getApp(), hit.getUri()), 1);
+        }
+        minutes.headMap(oldest).clear();
+    }
+
+    private long coveredFrom() {
+        return Math.max(startedAt, toMinute(LocalDateTime.now()) - windowMinutes + 1);
+    }
+
+    private static long toMinute(LocalDateTime dateTime) {
+        return Math.floorDiv(dateTime.toEpochSecond(ZoneOffset.UTC), 60);
+    }
+}
@@ -0,0 +1,60 @@
+package ru.practicum.stats.server.hit.sketch;
+
+import ru.practicum.stats.server.hit.utils.Hashes;
+
+/**
+ * HyperLogLog cardinality sketch with 2^12 registers.
+ * The relative standard error is 1.04 / sqrt(4096) ≈ 1.6%, so about 99% of
+ * estimates fall within ±5% of the exact count; small cardinalities are
+ * estimated by linear counting and are practically exact.
+ * Sketches merge by taking the register-wise maximum.
+ */
+public class HyperLogLog {
+
+    public static final int PRECISION = 12;
+    public static final int REGISTERS = 1 << PRECISION;
+
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+
+    private final byte[] registers = new byte[REGISTERS];
+
+    public static int register(long hash) {
+        return (int) (hash >>> (Long.SIZE - PRECISION));
+    }
+
+    public static int rho(long hash) {
+        return Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1;
+    }
+
+    public void add(byte[] value) {
+        var hash = Hashes.hash(value);
+        update(register(hash), rho(hash));
+    }
+
+    public void update(int register, int rho) {
+        if (rho > registers[register])
+            registers[register] = (byte) rho;
+    }
+
+    public void merge(HyperLogLog other) {
+        for (int i = 0; i < REGISTERS; i++) {
+            update(i, other.registers[i]);
+        }
+    }
+
+    public long estimate() {
+        var sum = 0.0;
+        var zeros = 0;
+
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0)
+                zeros++;
+        }
+        var estimate = ALPHA * REGISTERS * REGISTERS / sum;
+
+        if (estimate <= 2.5 * REGISTERS && zeros > 0)
+            estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+        return Math.round(estimate);
+    }
+}
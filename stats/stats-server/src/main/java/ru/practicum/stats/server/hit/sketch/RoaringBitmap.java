@@ -0,0 +1,273 @@
+package ru.practicum.stats.server.hit.sketch;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compressed set of non-negative int ids in the Roaring layout: ids are split by their
+ * high 16 bits into containers that hold the low 16 bits either as a sorted array, while
+ * there are at most 4096 of them, or as a 65536-bit bitmap. Union and cardinality work
+ * container by container, so merging many sparse or dense sets stays cheap.
+ */
+public class RoaringBitmap {
+
+    private static final int MAX_ARRAY_SIZE = 4096;
+    private static final int BITMAP_WORDS = 1 << 10;
+    private static final byte ARRAY = 0;
+    private static final byte BITMAP = 1;
+
+    private final TreeMap<Character, Container> containers = new TreeMap<>();
+
+    public void add(int value) {
+        var high = (char) (value >>> 16);
+        var container = containers.get(high);
+        containers.put(high, (container == null ? new ArrayContainer() : container).add((char) value));
+    }
+
+    /**
+     * Adds every id of other to this bitmap; other is left unchanged.
+     */
+    public void or(RoaringBitmap other) {
+        for (Map.Entry<Character, Container> entry : other.containers.entrySet()) {
+            var container = containers.get(entry.getKey());
+            containers.put(entry.getKey(), container == null ? entry.getValue().copy() : container.or(entry.getValue()));
+        }
+    }
+
+    public long cardinality() {
+        var cardinality = 0L;
+        for (Container container : containers.values()) {
+            cardinality += container.cardinality();
+        }
+        return cardinality;
+    }
+
+    public byte[] toBytes() {
+        var size = Integer.BYTES;
+        for (Container container : containers.values()) {
+            size += Character.BYTES + 1 + Integer.BYTES + container.dataSize();
+        }
+        var buffer = ByteBuffer.allocate(size);
+        buffer.putInt(containers.size());
+        containers.forEach((high, container) -> {
+            buffer.putChar(high);
+            container.write(buffer);
+        });
+        return buffer.array();
+    }
+
+    public static RoaringBitmap fromBytes(byte[] bytes) {
+        var bitmap = new RoaringBitmap();
+        var buffer = ByteBuffer.wrap(bytes);
+        var count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            var high = buffer.getChar();
+            var type = buffer.get();
+            var cardinality = buffer.getInt();
+            bitmap.containers.put(high, type == BITMAP
+                    ? BitmapContainer.read(buffer, cardinality)
+                    : ArrayContainer.read(buffer, cardinality));
+        }
+        return bitmap;
+    }
+
+    private interface Container {
+
+        /**
+         * Adds the value and returns the container now holding this set, which may be a new one.
+         */
+        Container add(char value);
+
+        /**
+         * Unions other into this set and returns the container now holding it; never changes other.
+         */
+        Container or(Container other);
+
+        Container copy();
+
+        int cardinality();
+
+        int dataSize();
+
+        void write(ByteBuffer buffer);
+    }
+
+    private static class ArrayContainer implements Container {
+
+        private char[] values;
+        private int size;
+
+        ArrayContainer() {
+            this(new char[4], 0);
+        }
+
+        ArrayContainer(char[] values, int size) {
+            this.values = values;
+            this.size = size;
+        }
+
+        static ArrayContainer read(ByteBuffer buffer, int cardinality) {
+            var values = new char[cardinality];
+            buffer.asCharBuffer().get(values);
+            buffer.position(buffer.position() + cardinality * Character.BYTES);
+            return new ArrayContainer(values, cardinality);
+        }
+
+        @Override
+        public Container add(char value) {
+            var index = Arrays.binarySearch(values, 0, size, value);
+            if (index >= 0)
+                return this;
+            if (size == MAX_ARRAY_SIZE)
+                return toBitmap().add(value);
+
+            index = -index - 1;
+            if (size == values.length)
+                values = Arrays.copyOf(values, Math.min(size * 2, MAX_ARRAY_SIZE));
+            System.arraycopy(values, index, values, index + 1, size - index);
+            values[index] = value;
+            size++;
+            return this;
+        }
+
+        @Override
+        public Container or(Container other) {
+            if (other instanceof BitmapContainer) {
+                var result = (BitmapContainer) other.copy();
+                for (int i = 0; i < size; i++) {
+                    result.add(values[i]);
+                }
+                return result;
+            }
+            var array = (ArrayContainer) other;
+            var merged = new char[size + array.size];
+            int i = 0, j = 0, k = 0;
+            while (i < size && j < array.size) {
+                if (values[i] < array.values[j])
+                    merged[k++] = values[i++];
+                else if (values[i] > array.values[j])
+                    merged[k++] = array.values[j++];
+                else {
+                    merged[k++] = values[i++];
+                    j++;
+                }
+            }
+            while (i < size) {
+                merged[k++] = values[i++];
+            }
+            while (j < array.size) {
+                merged[k++] = array.values[j++];
+            }
+            var result = new ArrayContainer(merged, k);
+            return k > MAX_ARRAY_SIZE ? result.toBitmap() : result;
+        }
+
+        @Override
+        public Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, Math.max(size, 1)), size);
+        }
+
+        @Override
+        public int cardinality() {
+            return size;
+        }
+
+        @Override
+        public int dataSize() {
+            return size * Character.BYTES;
+        }
+
+        @Override
+        public void write(ByteBuffer buffer) {
+            buffer.put(ARRAY);
+            buffer.putInt(size);
+            for (int i = 0; i < size; i++) {
+                buffer.putChar(values[i]);
+            }
+        }
+
+        private BitmapContainer toBitmap() {
+            var bitmap = new BitmapContainer();
+            for (int i = 0; i < size; i++) {
+                bitmap.add(values[i]);
+            }
+            return bitmap;
+        }
+    }
+
+    private static class BitmapContainer implements Container {
+
+        private final long[] words;
+        private int cardinality;
+
+        BitmapContainer() {
+            this(new long[BITMAP_WORDS], 0);
+        }
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        static BitmapContainer read(ByteBuffer buffer, int cardinality) {
+            var words = new long[BITMAP_WORDS];
+            buffer.asLongBuffer().get(words);
+            buffer.position(buffer.position() + BITMAP_WORDS * Long.BYTES);
+            return new BitmapContainer(words, cardinality);
+        }
+
+        @Override
+        public Container add(char value) {
+            var bit = 1L << value;
+            if ((words[value >>> 6] & bit) == 0) {
+                words[value >>> 6] |= bit;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        public Container or(Container other) {
+            if (other instanceof ArrayContainer) {
+                var array = (ArrayContainer) other;
+                for (int i = 0; i < array.size; i++) {
+                    add(array.values[i]);
+                }
+                return this;
+            }
+            var bitmap = (BitmapContainer) other;
+            cardinality = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                words[i] |= bitmap.words[i];
+                cardinality += Long.bitCount(words[i]);
+            }
+            return this;
+        }
+
+        @Override
+        public Container copy() {
+            return new BitmapContainer(words.clone(), cardinality);
+        }
+
+        @Override
+        public int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        public int dataSize() {
+            return BITMAP_WORDS * Long.BYTES;
+        }
+
+        @Override
+        public void write(ByteBuffer buffer) {
+            buffer.put(BITMAP);
+            buffer.putInt(cardinality);
+            for (long word : words) {
+                buffer.putLong(word);
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package ru.practicum.stats.server.hit.sketch;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Space-Saving heavy-hitters summary that tracks at most capacity items.
+ * When full, a new item replaces the one with the smallest count and inherits
+ * that count, so counts never underestimate and overestimate by at most the
+ * smallest tracked count. Every item more frequent than total / capacity is tracked.
+ */
+public class SpaceSaving<K> {
+
+    private final int capacity;
+    private final Map<K, Counter<K>> counters = new HashMap<>();
+    private final TreeSet<Counter<K>> byCount = new TreeSet<>(Comparator
+            .comparingLong((Counter<K> counter) -> counter.count)
+            .thenComparingLong(counter -> counter.sequence));
+    private long sequence;
+
+    public SpaceSaving(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public void add(K item, long increment) {
+        var counter = counters.get(item);
+        if (counter == null) {
+            var count = 0L;
+            if (counters.size() >= capacity) {
+                var smallest = byCount.pollFirst();
+                counters.remove(smallest.item);
+                count = smallest.count;
+            }
+            counter = new Counter<>(item, count, sequence++);
+            counters.put(item, counter);
+        } else {
+            byCount.remove(counter);
+        }
+        counter.count += increment;
+        byCount.add(counter);
+    }
+
+    /**
+     * Upper bound of the count of an item that is not tracked: the smallest tracked
+     * count once the summary is full, zero before.
+     */
+    public long untrackedBound() {
+        return counters.size() < capacity ? 0 : byCount.first().count;
+    }
+
+    /**
+     * Adds each tracked count less the given floor to the map, summing counts of the same item.
+     */
+    public void addCountsAbove(Map<K, Long> counts, long floor) {
+        counters.forEach((item, counter) -> counts.merge(item, counter.count - floor, Long::sum));
+    }
+
+    private static class Counter<K> {
+
+        private final K item;
+        private final long sequence;
+        private long count;
+
+        Counter(K item, long count, long sequence) {
+            this.item = item;
+            this.count = count;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package ru.practicum.stats.server.hit.utils;
+
+import ru.practicum.stats.server.hit.exception.BadParamException;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+public class IpAddresses {
+
+    private IpAddresses() {
+    }
+
+    /**
+     * Packs an IPv4 (4 bytes) or IPv6 (16 bytes) literal without DNS lookups.
+     */
+    public static byte[] toBytes(String ip) {
+        if (ip.indexOf(':') >= 0)
+            return ipv6(ip);
+
+        var parts = ip.split("\\.", -1);
+        if (parts.length != 4)
+            throw new BadParamException("ip must be an IPv4 or IPv6 address: " + ip);
+
+        var bytes = new byte[4];
+        for (int i = 0; i < 4; i++) {
+            bytes[i] = (byte) octet(parts[i], ip);
+        }
+        return bytes;
+    }
+
+    public static void validate(String ip) {
+        toBytes(ip);
+    }
+
+    private static int octet(String part, String ip) {
+        if (part.isEmpty() || part.length() > 3 || !part.chars().allMatch(Character::isDigit))
+            throw new BadParamException("ip must be an IPv4 or IPv6 address: " + ip);
+
+        var value = Integer.parseInt(part);
+        if (value > 255)
+            throw new BadParamException("ip must be an IPv4 or IPv6 address: " + ip);
+        return value;
+    }
+
+    private static byte[] ipv6(String ip) {
+        if (!ip.chars().allMatch(c -> Character.digit(c, 16) >= 0 || c == ':' || c == '.'))
+            throw new BadParamException("ip must be an IPv4 or IPv6 address: " + ip);
+        try {
+            var bytes = InetAddress.getByName(ip).getAddress();
+            if (bytes.length == 16 || bytes.length == 4)
+                return bytes;
+        } catch (UnknownHostException | SecurityException exception) {
+            throw new BadParamException("ip must be an IPv4 or IPv6 address: " + ip);
+        }
+        throw new BadParamException("ip must be an IPv4 or IPv6 address: " + ip);
+    }
+}
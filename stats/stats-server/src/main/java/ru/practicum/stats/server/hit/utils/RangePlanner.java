@@ -0,0 +1,56 @@
+package ru.practicum.stats.server.hit.utils;
+
+import ru.practicum.stats.server.hit.enums.RollupGranularity;
+import ru.practicum.stats.server.hit.model.RangePlan;
+import ru.practicum.stats.server.hit.model.TimeRange;
+
+import java.time.LocalDateTime;
+
+public class RangePlanner {
+
+    private static final RollupGranularity[] GRANULARITIES = RollupGranularity.values();
+
+    private RangePlanner() {
+    }
+
+    /**
+     * Stored timestamps have microsecond precision, so an inclusive end maps to end + 1µs exclusive.
+     */
+    public static LocalDateTime exclusiveEnd(LocalDateTime end) {
+        return end.plusNanos(1_000);
+    }
+
+    public static RangePlan plan(LocalDateTime start, LocalDateTime end) {
+        var plan = new RangePlan();
+        split(plan, start, end, 0);
+        return plan;
+    }
+
+    private static void split(RangePlan plan, LocalDateTime start, LocalDateTime end, int level) {
+        var granularity = GRANULARITIES[level];
+        var alignedStart = granularity.ceil(start);
+        var alignedEnd = granularity.floor(end);
+
+        if (!alignedStart.isBefore(alignedEnd)) {
+            addFiner(plan, start, end, level);
+            return;
+        }
+        addFiner(plan, start, alignedStart, level);
+        addFiner(plan, alignedEnd, end, level);
+
+        if (level + 1 < GRANULARITIES.length)
+            split(plan, alignedStart, alignedEnd, level + 1);
+        else
+            plan.addBuckets(granularity, new TimeRange(alignedStart, alignedEnd));
+    }
+
+    private static void addFiner(RangePlan plan, LocalDateTime start, LocalDateTime end, int level) {
+        if (!start.isBefore(end))
+            return;
+
+        if (level == 0)
+            plan.addRaw(new TimeRange(start, end));
+        else
+            plan.addBuckets(GRANULARITIES[level - 1], new TimeRange(start, end));
+    }
+}
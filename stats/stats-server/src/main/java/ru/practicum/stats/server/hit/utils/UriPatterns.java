@@ -0,0 +1,60 @@
+package ru.practicum.stats.server.hit.utils;
+
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import static java.util.stream.Collectors.joining;
+
+/**
+ * uris filter values may contain '*', which matches any sequence of characters.
+ */
+public class UriPatterns {
+
+    public static final char WILDCARD = '*';
+
+    private UriPatterns() {
+    }
+
+    public static boolean isPattern(String uri) {
+        return uri.indexOf(WILDCARD) >= 0;
+    }
+
+    /**
+     * Translates a pattern into a LIKE pattern that uses '\' as the escape character.
+     */
+    public static String toLike(String pattern) {
+        var like = new StringBuilder(pattern.length() + 4);
+        for (char c : pattern.toCharArray()) {
+            if (c == WILDCARD) {
+                like.append('%');
+                continue;
+            }
+            if (c == '%' || c == '_' || c == '\\')
+                like.append('\\');
+            like.append(c);
+        }
+        return like.toString();
+    }
+
+    public static Predicate<String> matcher(List<String> uris) {
+        Set<String> exact = new HashSet<>();
+        List<Pattern> patterns = new ArrayList<>();
+
+        for (String uri : uris) {
+            if (isPattern(uri))
+                patterns.add(toRegex(uri));
+            else
+                exact.add(uri);
+        }
+        if (patterns.isEmpty())
+            return exact::contains;
+        return uri -> exact.contains(uri) || patterns.stream().anyMatch(pattern -> pattern.matcher(uri).matches());
+    }
+
+    private static Pattern toRegex(String pattern) {
+        return Pattern.compile(Arrays.stream(pattern.split(Pattern.quote(String.valueOf(WILDCARD)), -1))
+                .map(part -> part.isEmpty() ? "" : Pattern.quote(part))
+                .collect(joining(".*")), Pattern.DOTALL);
+    }
+}
@@ -0,0 +1,12 @@
+DROP TABLE IF EXISTS hits CASCADE;
+
+CREATE TABLE IF NOT EXISTS hits
+(
+    id        BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    app_id    INT           NOT NULL,
+    uri_id    INT           NOT NULL,
+    ip        VARBINARY(16) NOT NULL,
+    timestamp TIMESTAMP     NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS hits_timestamp_idx ON hits (timestamp);
@@ -0,0 +1 @@
+CREATE INDEX IF NOT EXISTS hit_uris_name_pattern_idx ON hit_uris (name varchar_pattern_ops);
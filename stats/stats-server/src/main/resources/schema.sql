@@ -1,10 +1,79 @@
-DROP TABLE IF EXISTS hits CASCADE;
+DROP TABLE IF EXISTS hit_apps CASCADE;
 
-CREATE TABLE IF NOT EXISTS hits
+CREATE TABLE IF NOT EXISTS hit_apps
 (
-    id        BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
-    uri       VARCHAR(140) NOT NULL,
-    app       VARCHAR(140) NOT NULL,
-    ip        VARCHAR(50)  NOT NULL,
-    timestamp TIMESTAMP    NOT NULL
-);
\ No newline at end of file
+    id   INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name VARCHAR(140) NOT NULL UNIQUE
+);
+
+DROP TABLE IF EXISTS hit_uris CASCADE;
+
+CREATE TABLE IF NOT EXISTS hit_uris
+(
+    id   INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name VARCHAR(140) NOT NULL UNIQUE
+);
+
+DROP TABLE IF EXISTS hits_rollup CASCADE;
+
+CREATE TABLE IF NOT EXISTS hits_rollup
+(
+    granularity VARCHAR(6)   NOT NULL,
+    bucket      TIMESTAMP    NOT NULL,
+    app_id      INT          NOT NULL,
+    uri_id      INT          NOT NULL,
+    hits        BIGINT       NOT NULL,
+    PRIMARY KEY (granularity, bucket, app_id, uri_id)
+);
+
+CREATE INDEX IF NOT EXISTS hits_rollup_uri_idx ON hits_rollup (granularity, uri_id, bucket);
+
+
+DROP TABLE IF EXISTS hits_compacted CASCADE;
+
+CREATE TABLE IF NOT EXISTS hits_compacted
+(
+    bucket TIMESTAMP NOT NULL,
+    app_id INT       NOT NULL,
+    uri_id INT       NOT NULL,
+    hits   BIGINT    NOT NULL,
+    PRIMARY KEY (bucket, app_id, uri_id)
+);
+
+CREATE INDEX IF NOT EXISTS hits_compacted_uri_idx ON hits_compacted (uri_id, bucket);
+
+DROP TABLE IF EXISTS hits_sketch CASCADE;
+
+CREATE TABLE IF NOT EXISTS hits_sketch
+(
+    granularity VARCHAR(6)   NOT NULL,
+    bucket      TIMESTAMP    NOT NULL,
+    app_id      INT          NOT NULL,
+    uri_id      INT          NOT NULL,
+    reg         SMALLINT     NOT NULL,
+    rho         SMALLINT     NOT NULL,
+    PRIMARY KEY (granularity, bucket, app_id, uri_id, reg)
+);
+
+CREATE INDEX IF NOT EXISTS hits_sketch_uri_idx ON hits_sketch (granularity, uri_id, bucket);
+
+DROP TABLE IF EXISTS hit_ips CASCADE;
+
+CREATE TABLE IF NOT EXISTS hit_ips
+(
+    id      INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    address BYTEA NOT NULL UNIQUE
+);
+
+DROP TABLE IF EXISTS hits_bitmap CASCADE;
+
+CREATE TABLE IF NOT EXISTS hits_bitmap
+(
+    bucket TIMESTAMP NOT NULL,
+    app_id INT       NOT NULL,
+    uri_id INT       NOT NULL,
+    ips    BYTEA     NOT NULL,
+    PRIMARY KEY (bucket, app_id, uri_id)
+);
+
+CREATE INDEX IF NOT EXISTS hits_bitmap_uri_idx ON hits_bitmap (uri_id, bucket);